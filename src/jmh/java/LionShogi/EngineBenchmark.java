@@ -0,0 +1,170 @@
+package LionShogi;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of the engine's hot paths, on fixed positions of both variants: the start
+ * position, and the position reached after a number of moves of a seeded game. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark
+{
+	// Seed of the game reaching the positions, and most moves tried to get a piece in hand.
+	private static final long GAME_SEED = 1006;
+	private static final int MAX_EXTRA_PLIES = 20;
+
+	// Variant, number of moves played from the start, and layers of the fixed search.
+	@Param({StartShogi.LION_PATH, StartShogi.MODERN_PATH})
+	String variant;
+	@Param({"0", "10"})
+	int plies;
+	@Param({"3"})
+	int layers;
+
+	// Handler and bot of the variant, and the position benchmarked.
+	LogicHandler mainHandler;
+	ShogiBot mainBot;
+	GameState state;
+	SearchPosition searchPos;
+
+	// Squares of the pieces of the side to move, board moves as from and to squares,
+	// and empty squares a piece in hand can be dropped on.
+	byte[][] pieceSquares;
+	byte[][][] boardMoves;
+	byte[][] blankSquares;
+
+	/** Loads the variant and plays the seeded game up to the benchmarked position. */
+	@Setup
+	public void setup()
+	{
+		mainHandler = new LogicHandler();
+		mainBot = new ShogiBot(mainHandler);
+		mainHandler.loadVariant(variant, mainBot);
+		state = mainHandler.currentState;
+
+		// Play random moves, captures first, but never the king's capture. Once past the
+		// number of moves, keep playing until the side to move has a piece in hand.
+		Random random = new Random(GAME_SEED);
+		for (int ply = 0; ply < plies + MAX_EXTRA_PLIES; ply++)
+		{
+			if (ply >= plies && (plies == 0 || state.getHandSize(state.getTurnByte()) > 0)) break;
+			ArrayList<GameState> captures = new ArrayList<>();
+			ArrayList<GameState> quiets = new ArrayList<>();
+			for (GameState nextState : mainBot.getAllGameStates(state))
+			{
+				if (nextState.victor != 0) continue;
+				int handSize = nextState.getHandSize((byte) 1) + nextState.getHandSize((byte) 2);
+				if (handSize > state.getHandSize((byte) 1) + state.getHandSize((byte) 2))
+					captures.add(nextState);
+				else quiets.add(nextState);
+			}
+			if (!captures.isEmpty()) state = captures.get(random.nextInt(captures.size()));
+			else state = quiets.get(random.nextInt(quiets.size()));
+		}
+
+		// Find the pieces, moves and empty squares of the position.
+		Position board = state.position;
+		byte turn = state.getTurnByte();
+		ArrayList<byte[]> pieces = new ArrayList<>();
+		ArrayList<byte[][]> moves = new ArrayList<>();
+		ArrayList<byte[]> blanks = new ArrayList<>();
+		for (byte y = 0; y < board.height; y++)
+			for (byte x = 0; x < board.width; x++)
+			{
+				byte[] square = new byte[] {y, x};
+				byte[] piece = board.getPiece(y, x);
+				if (piece[1] == 0) blanks.add(square);
+				if (piece[1] != turn) continue;
+				pieces.add(square);
+				byte[][] selectBoard = mainHandler.getPossibleMoves(square, state);
+				for (byte toY = 0; toY < board.height; toY++)
+					for (byte toX = 0; toX < board.width; toX++)
+						if (selectBoard[toY][toX] != 0)
+							moves.add(new byte[][] {square, new byte[] {toY, toX}});
+			}
+		pieceSquares = pieces.toArray(new byte[0][]);
+		boardMoves = moves.toArray(new byte[0][][]);
+		blankSquares = blanks.toArray(new byte[0][]);
+
+		// Search without the table, so that each call searches the same tree.
+		mainBot.tableSize = 0;
+		mainBot.side = turn;
+		mainBot.deadline = Long.MAX_VALUE;
+		mainBot.completedLayer = -1;
+		searchPos = new SearchPosition(state, mainBot.getZobrist(state));
+	}
+
+	/**
+	* Benchmarks the selection board of each piece of the side to move.
+	* @param blackhole the sink of the results.
+	 */
+	@Benchmark
+	public void getPossibleMoves(Blackhole blackhole)
+	{
+		for (byte[] square : pieceSquares)
+			blackhole.consume(mainHandler.getPossibleMoves(square, state));
+	}
+
+	/**
+	* Benchmarks playing each board move of the side to move on a new game state.
+	* @param blackhole the sink of the results.
+	 */
+	@Benchmark
+	public void playMove(Blackhole blackhole)
+	{
+		for (byte[][] move : boardMoves)
+			blackhole.consume(state.playMove(move[0], move[1]));
+	}
+
+	/**
+	* Benchmarks dropping each piece in hand of the side to move on each empty square.
+	* @param blackhole the sink of the results.
+	 */
+	@Benchmark
+	public void placeCapture(Blackhole blackhole)
+	{
+		int handSize = state.getHandSize(state.getTurnByte());
+		for (byte index = 0; index < handSize; index++)
+			for (byte[] square : blankSquares)
+				blackhole.consume(state.placeCapture(index, square));
+	}
+
+	/**
+	* Benchmarks the reward of the game state.
+	* @return the reward.
+	 */
+	@Benchmark
+	public int getReward()
+	{
+		return mainBot.getReward(state);
+	}
+
+	/**
+	* Benchmarks an alpha-beta search of the position to a fixed layer.
+	* @return the value of the search.
+	 */
+	@Benchmark
+	public int alphabeta()
+	{
+		mainBot.ordering.clear(searchPos.board);
+		return mainBot.alphabeta(searchPos, mainBot.MIN_ALPHA, mainBot.MAX_BETA, layers, true);
+	}
+}
@@ -0,0 +1,28 @@
+package LionShogi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight recorder event of a bot choosing its move, from the start to the end of its search. */
+@Name("LionShogi.BotMove")
+@Label("Bot Move")
+@Category({"LionShogi", "Search"})
+@Description("A bot choosing its move")
+public class BotMoveEvent extends Event
+{
+	@Label("Layer")
+	@Description("Last layer the search finished, or -1 for a tablebase move")
+	int layer;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Score")
+	int score;
+
+	@Label("Move")
+	String move;
+}
@@ -1,4 +1,5 @@
 package LionShogi;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import LionShogi.json.*;
@@ -10,9 +11,33 @@ public class GameRules implements ShogiSelector
 	private HashMap<Byte, char[][]> pieceMovementMap;
 	private HashMap<Character, byte[]> pieceConversionTable;
 	private HashMap<Byte, byte[]> piecePromotionMap;
-	private HashMap<Byte, Integer> pieceValueMap;
+	private int[] pieceValues;
 	private HashMap<Byte, Character> showMap;
 	private HashMap<Byte, Byte> demoteMap;
+	private int pieceTypes;
+
+	// Moves of each piece for black as row and column increments: single steps and lines.
+	private HashMap<Byte, int[]> pieceStepMap;
+	private HashMap<Byte, int[]> pieceLineMap;
+
+	// Moves compiled for a board, for each camp, piece type and square: squares reached
+	// in one step, and squares of each line in sliding order.
+	private int tableSquares;
+	private int[][] stepTable;
+	private int[][][] lineTable;
+
+	// Promotion, promotion distance and demotion of each piece type, compiled with the moves.
+	private byte[] promotionTable;
+	private byte[] promotionDistTable;
+	private byte[] demoteTable;
+
+	// Characters of piece movement patterns.
+	private static final char PIECE = 'O';
+	private static final char ABS_MOVE = 'X';
+	private static final char REL_MOVE = '/';
+
+	// Value of piece types which were given none.
+	private static final int NO_VALUE = -1;
 
 	/**
 	* Getter for a piece as a byte array.
@@ -53,6 +78,181 @@ public class GameRules implements ShogiSelector
 		}
 	}
 
+	/**
+	* Compiles a piece's movement pattern into increments of black's single steps and lines.
+	* White's moves are the same increments reversed.
+	* @param pieceKey the key of the piece.
+	* @param movementArray the movement pattern, around the piece's 'O'.
+	 */
+	private void compileMovement(byte pieceKey, char[][] movementArray)
+	{
+		// Find piece position in the pattern - a piece without one has no movement.
+		int originY = -1, originX = -1;
+		for (int y = 0; y < movementArray.length; y++)
+			for (int x = 0; x < movementArray[y].length; x++)
+				if (movementArray[y][x] == PIECE)
+				{
+					originY = y;
+					originX = x;
+				}
+		if (originY == -1) return;
+
+		// Translate each move character to an increment from the piece.
+		int[] steps = new int[0], lines = new int[0];
+		for (int y = 0; y < movementArray.length; y++)
+			for (int x = 0; x < movementArray[y].length; x++)
+			{
+				if (movementArray[y][x] == ABS_MOVE)
+				{
+					steps = Arrays.copyOf(steps, steps.length + 2);
+					steps[steps.length - 2] = y - originY;
+					steps[steps.length - 1] = x - originX;
+				}
+				else if (movementArray[y][x] == REL_MOVE)
+				{
+					lines = Arrays.copyOf(lines, lines.length + 2);
+					lines[lines.length - 2] = y - originY;
+					lines[lines.length - 1] = x - originX;
+				}
+			}
+		pieceStepMap.put(pieceKey, steps);
+		pieceLineMap.put(pieceKey, lines);
+	}
+
+	/**
+	* Compiles the moves of all pieces for a board, so that move generation only looks up
+	* tables. Called once the variant is loaded and the board's dimensions are known.
+	* @param height the height of the board.
+	* @param width the width of the board.
+	 */
+	public void compileMoveTables(int height, int width)
+	{
+		// Compile promotion and demotion of each piece type.
+		promotionTable = new byte[pieceTypes];
+		promotionDistTable = new byte[pieceTypes];
+		demoteTable = new byte[pieceTypes];
+		for (byte type = 0; type < pieceTypes; type++)
+		{
+			byte[] promoProps = getPromotionProperties(type);
+			promotionTable[type] = promoProps[0];
+			promotionDistTable[type] = promoProps[1];
+			demoteTable[type] = getDemote(type);
+		}
+
+		tableSquares = height * width;
+		stepTable = new int[2 * pieceTypes * tableSquares][];
+		lineTable = new int[2 * pieceTypes * tableSquares][][];
+		for (byte camp = 1; camp <= 2; camp++)
+			for (byte type = 1; type < pieceTypes; type++)
+			{
+				if (!pieceStepMap.containsKey(type)) continue; // No movement.
+				int[] steps = pieceStepMap.get(type);
+				int[] lines = pieceLineMap.get(type);
+				int sign = 1; // White moves the other way.
+				if (camp == 2) sign = -1;
+
+				for (int y = 0; y < height; y++)
+					for (int x = 0; x < width; x++)
+					{
+						int index = getMoveIndex(type, camp, y * width + x);
+
+						// Keep steps which stay on the board.
+						int[] stepSquares = new int[steps.length / 2];
+						int stepCount = 0;
+						for (int i = 0; i < steps.length; i += 2)
+						{
+							int toY = y + sign * steps[i], toX = x + sign * steps[i + 1];
+							if (toY >= 0 && toY < height && toX >= 0 && toX < width)
+								stepSquares[stepCount++] = toY * width + toX;
+						}
+						stepTable[index] = Arrays.copyOf(stepSquares, stepCount);
+
+						// Follow each line up to the edge of the board.
+						int[][] lineSquares = new int[lines.length / 2][];
+						for (int i = 0; i < lines.length; i += 2)
+						{
+							int[] line = new int[Math.max(height, width)];
+							int lineCount = 0;
+							int toY = y + sign * lines[i], toX = x + sign * lines[i + 1];
+							while (toY >= 0 && toY < height && toX >= 0 && toX < width)
+							{
+								line[lineCount++] = toY * width + toX;
+								toY += sign * lines[i];
+								toX += sign * lines[i + 1];
+							}
+							lineSquares[i / 2] = Arrays.copyOf(line, lineCount);
+						}
+						lineTable[index] = lineSquares;
+					}
+			}
+	}
+
+	/**
+	* Getter for the index of a piece on a square in the compiled move tables.
+	* @param type the type of the piece.
+	* @param camp the camp of the piece.
+	* @param square the square the piece is on.
+	* @return the index in the move tables.
+	 */
+	private int getMoveIndex(byte type, byte camp, int square)
+	{
+		return ((camp - 1) * pieceTypes + type) * tableSquares + square;
+	}
+
+	/**
+	* Getter for the squares a piece reaches in one step, from the compiled move tables.
+	* @param type the type of the piece.
+	* @param camp the camp of the piece.
+	* @param square the square the piece is on.
+	* @return the squares of the steps, or null if the piece has no movement.
+	 */
+	public int[] getStepTargets(byte type, byte camp, int square)
+	{
+		return stepTable[getMoveIndex(type, camp, square)];
+	}
+
+	/**
+	* Getter for the lines a piece slides along, from the compiled move tables.
+	* @param type the type of the piece.
+	* @param camp the camp of the piece.
+	* @param square the square the piece is on.
+	* @return the squares of each line in sliding order, or null if the piece has no movement.
+	 */
+	public int[][] getLineTargets(byte type, byte camp, int square)
+	{
+		return lineTable[getMoveIndex(type, camp, square)];
+	}
+
+	/**
+	* Getter for the piece a piece type promotes to, from the compiled tables.
+	* @param type the type of the piece.
+	* @return the promoted piece type, or the same type if it does not promote.
+	 */
+	public byte getPromotion(byte type)
+	{
+		return promotionTable[type];
+	}
+
+	/**
+	* Getter for the distance to the far edge at which a piece type promotes.
+	* @param type the type of the piece.
+	* @return the number of rows of the promotion zone, 0 if it does not promote.
+	 */
+	public int getPromotionDist(byte type)
+	{
+		return promotionDistTable[type];
+	}
+
+	/**
+	* Getter for the piece a captured piece type goes to the hand as, from the compiled tables.
+	* @param type the type of the piece.
+	* @return the demoted piece type.
+	 */
+	public byte getDemoteType(byte type)
+	{
+		return demoteTable[type];
+	}
+
 	/**
 	* Getter for which piece the current piece promotes to, and where.
 	* @param pieceKey the key of the current piece.
@@ -92,17 +292,40 @@ public class GameRules implements ShogiSelector
 	 */
 	public int getValue (byte byteKey)
 	{
-		try
-		{
-			return pieceValueMap.get(byteKey);
-		}
-		catch (NullPointerException e)
+		if (byteKey < 0 || byteKey >= pieceValues.length || pieceValues[byteKey] == NO_VALUE)
 		{
 			System.out.println("ERROR: Piece non-existant on value map!" 
 					+ byteKey + "\nQuitting...");
 			System.exit(0);
 			return 0;
 		}
+		return pieceValues[byteKey];
+	}
+
+	/**
+	* Getter for a piece type which can be on the board or in a hand without a value: a piece
+	* of the variant, or what one promotes or demotes to. Material is kept as running totals
+	* of the value table, so the variant is rejected for it. Called once moves are compiled.
+	* @return the key of a piece without value, or 0 if all pieces have one.
+	 */
+	public byte getPieceWithoutValue()
+	{
+		for (byte type = 1; type < pieceTypes; type++)
+		{
+			if (!pieceMovementMap.containsKey(type)) continue; // Not a piece of the variant.
+			for (byte reached : new byte[] {type, promotionTable[type], demoteTable[type]})
+				if (reached > 0 && pieceValues[reached] == NO_VALUE) return reached;
+		}
+		return 0;
+	}
+
+	/**
+	* Getter for the values of all piece types, for evaluating without lookups.
+	* @return the array of values indexed by piece key, -1 for pieces without value.
+	 */
+	public int[] getValueTable()
+	{
+		return pieceValues;
 	}
 
 	/**
@@ -122,6 +345,32 @@ public class GameRules implements ShogiSelector
 		}
 	}
 
+	/**
+	* Getter for the number of piece types, including the empty type 0.
+	* @return the highest piece key plus one.
+	 */
+	public int getPieceTypes()
+	{
+		return pieceTypes;
+	}
+
+	/**
+	* Registers a piece key so that piece types cover it.
+	* @param pieceKey the key of the piece.
+	 */
+	private void registerPieceKey(byte pieceKey)
+	{
+		if (pieceKey >= pieceTypes) pieceTypes = pieceKey + 1;
+
+		// Grow the value table to cover the new piece types.
+		if (pieceTypes > pieceValues.length)
+		{
+			int oldLength = pieceValues.length;
+			pieceValues = Arrays.copyOf(pieceValues, pieceTypes);
+			Arrays.fill(pieceValues, oldLength, pieceTypes, NO_VALUE);
+		}
+	}
+
 	@Override
 	public void onObject(HashMap<String, String> currObject) 
 	{
@@ -138,6 +387,8 @@ public class GameRules implements ShogiSelector
 					currObject.get("char_0").toCharArray()[0],
 					currObject.get("char_1").toCharArray()[0]
 				};
+				registerPieceKey(pieceKey);
+
 				// Add characters to the piece conversion table.
 				pieceConversionTable.put(pieceChars[0], new byte[]{pieceKey, 1});
 				pieceConversionTable.put(pieceChars[1], new byte[]{pieceKey, 2});
@@ -158,6 +409,7 @@ public class GameRules implements ShogiSelector
 					String promoString = currObject.get("promotion");
 					byte promo = LogicHandler.intToByte(Integer.valueOf(promoString));
 					piecePromotionMap.put(pieceKey, new byte[] {promo, dist});
+					registerPieceKey(promo);
 				}
 
 				// Add piece's value to value map.
@@ -165,7 +417,7 @@ public class GameRules implements ShogiSelector
 				{
 					String rewardString = currObject.get("value");
 					if (rewardString.matches("[0-9]*?")) // Is a number
-						pieceValueMap.put(pieceKey, Integer.valueOf(rewardString));
+						pieceValues[pieceKey] = Integer.valueOf(rewardString);
 				}
 
 				// Add piece to demote map.
@@ -184,6 +436,7 @@ public class GameRules implements ShogiSelector
 					movementArray[i] = currObject.get(keyString).toCharArray();
 				}
 				pieceMovementMap.put(pieceKey, movementArray);
+				compileMovement(pieceKey, movementArray);
 
 				// Add show character to the show map.
 				char showChar = currObject.get("show").toCharArray()[0];
@@ -203,13 +456,16 @@ public class GameRules implements ShogiSelector
 	public void init()
 	{
 		pieceMovementMap = new HashMap<>(); // Reset piece movements
+		pieceStepMap = new HashMap<>(); // Reset compiled piece movements.
+		pieceLineMap = new HashMap<>();
 		pieceConversionTable = new HashMap<>(); // Reset piece conversion
 		pieceConversionTable.put('0', new byte[]{0, 0}); // Add empty conversion.
 		piecePromotionMap = new HashMap<>(); // Reset piece promotion.
-		pieceValueMap = new HashMap<>(); // Reset piece value
+		pieceValues = new int[] {0}; // Reset piece value - the empty type is worth nothing.
 		demoteMap = new HashMap<>(); // Reset demote map.
 		showMap = new HashMap<>(); // Reset graphics for pieces.
 		showMap.put((byte) 0, ' '); // Add graphic for empty case.
+		pieceTypes = 1; // Only the empty type is known.
 	}
 
 	/** Constructor for the game rules class. */
@@ -1,13 +1,12 @@
 package LionShogi;
 
-import java.util.ArrayList;
-
 /** Class representing a game state */
 public class GameState
 {
-	byte[][][] boardArray;
-	ArrayList<Byte> capturesP0 = new ArrayList<>();
-	ArrayList<Byte> capturesP1 = new ArrayList<>();
+	GameRules shogiRules;
+	Position position;
+	byte[][] selectBoard;
+	int[][] hands;
 	byte[] selectPiece;
 	boolean P0Turn;
 	byte victor;
@@ -38,25 +37,12 @@ public class GameState
 	 */
 	public GameState setSelectMode(byte[][] possibleMoves, byte[] selectPiece)
 	{
-		if (possibleMoves.length == boardArray.length
-				&& possibleMoves[0].length == boardArray[0].length)
+		if (possibleMoves.length == position.height
+				&& possibleMoves[0].length == position.width)
 		{
-			// Initialize new board.
-			byte[][][] selectBoard = 
-				new byte[boardArray.length][boardArray[0].length][3];
-
-			// Copy content into the selection board.
-			for (int y = 0; y < boardArray.length; y++)
-				for (int x = 0; x < boardArray[y].length; x++)
-				{
-					selectBoard[y][x][0] = boardArray[y][x][0];
-					selectBoard[y][x][1] = boardArray[y][x][1];
-					selectBoard[y][x][2] = possibleMoves[y][x];
-				}
-
-			// Return the new game state.
-			return new GameState (selectBoard,
-					this.capturesP0, this.capturesP1, this.P0Turn, selectPiece);
+			// Return the new game state - the position is shared as it is never modified.
+			return new GameState (shogiRules, position, this.hands, this.P0Turn, selectPiece,
+					possibleMoves);
 		}
 		else 
 		{
@@ -73,18 +59,11 @@ public class GameState
 	 */
 	public GameState playMove(byte[] pos_0, byte[] pos_1)
 	{
-		// Initialize new board
-		byte[][][] newBoard = new byte[boardArray.length][boardArray[0].length][2];
-		
-		// Copy old board to new board
-		for (int y = 0; y < newBoard.length; y++)
-			for (int x = 0; x < newBoard[0].length; x++)
-				for (int i = 0; i < newBoard[0][0].length; i++)
-					newBoard[y][x][i] = boardArray[y][x][i]; 
-
 		// Initialize moved position.
-		byte[] movePos = newBoard[pos_1[0]][pos_1[1]];
-		byte[] movePiece = newBoard[pos_0[0]][pos_0[1]];
+		int fromSquare = position.toSquare(pos_0[0], pos_0[1]);
+		int toSquare = position.toSquare(pos_1[0], pos_1[1]);
+		byte[] movePos = position.getPiece(pos_1[0], pos_1[1]);
+		byte[] movePiece = position.getPiece(pos_0[0], pos_0[1]);
 
 		// Check if move piece is of wrong group
 		if ((P0Turn && movePiece[1] == 2) || (!P0Turn && movePiece[1] == 1))
@@ -93,38 +72,38 @@ public class GameState
 			return this;
 		}
 
-		// Copy capture lists
-		ArrayList<Byte> nCapturesP0 = new ArrayList<>(capturesP0.size());
-		for (Byte currCapture : capturesP0) nCapturesP0.add(currCapture);
-		ArrayList<Byte> nCapturesP1 = new ArrayList<>(capturesP1.size());
-		for (Byte currCapture : capturesP1) nCapturesP1.add(currCapture);
+		// Copy hands
+		int[][] nHands = copyHands();
 
 		// Move pieces
 		if (movePos[1] == 1) // Piece from black camp has been captured. 
 		{
 			// Demote the piece that has been takem.
-			movePos[0] = LogicHandler.shogiRules.getDemote(movePos[0]);
-			nCapturesP1.add(movePos[0]);
+			movePos[0] = shogiRules.getDemote(movePos[0]);
+			nHands[1][movePos[0]]++;
 		}
 		if (movePos[1] == 2) // Piece from white camp has been captured.
 		{
-			movePos[0] = LogicHandler.shogiRules.getDemote(movePos[0]);
-			nCapturesP0.add(movePos[0]);
+			movePos[0] = shogiRules.getDemote(movePos[0]);
+			nHands[0][movePos[0]]++;
 		}
-		newBoard[pos_1[0]][pos_1[1]] = movePiece;
-		newBoard[pos_0[0]][pos_0[1]] = new byte[] {0, 0}; // Make move piece empty.
 
 		// Check if piece is within promotion range
-		byte[] promoProps = LogicHandler.shogiRules.getPromotionProperties(movePiece[0]);
+		byte[] promoProps = shogiRules.getPromotionProperties(movePiece[0]);
 		boolean isInBounds = false;
 		if (movePiece[1] == 1) 
 			isInBounds = pos_1[0] < promoProps[1];
-		else isInBounds = pos_1[0] >= newBoard.length - promoProps[1];
+		else isInBounds = pos_1[0] >= position.height - promoProps[1];
 		if (isInBounds)
-			newBoard[pos_1[0]][pos_1[1]][0] = promoProps[0];
+			movePiece[0] = promoProps[0];
+
+		// Copy the position and move the piece on it.
+		Position newPosition = position.copy();
+		newPosition.clearSquare(fromSquare); // Make move piece empty.
+		newPosition.setPiece(toSquare, movePiece[0], movePiece[1]);
 
 		// Set new game state
-		return new GameState (newBoard, nCapturesP0, nCapturesP1, !P0Turn, null);
+		return new GameState (shogiRules, newPosition, nHands, !P0Turn, null);
 
 	}
 
@@ -137,7 +116,7 @@ public class GameState
 	{
 		if (selectPiece != null && stateMode == StateMode.MOVE_SELECT)
 		{
-			if (boardArray[pos_1[0]][pos_1[1]][2] != 0)
+			if (selectBoard[pos_1[0]][pos_1[1]] != 0)
 			{
 				return playMove(selectPiece, pos_1);
 			}
@@ -157,46 +136,78 @@ public class GameState
 
 	/**
 	* Getter for a game state with a captured piece moved to the board.
-	* @param captPosition the index of the captured piece.
+	* @param captPosition the index of the captured piece, in the order hands are shown.
 	* @param movePos the position where the piece is moved to.
 	* @return the new game state.
 	 */
 	public GameState placeCapture(byte captPosition, byte[] movePos)
 	{
-		// Initialize new board
-		byte[][][] newBoard = new byte[boardArray.length][boardArray[0].length][2];
-		
-		// Copy old board to new board
-		for (int y = 0; y < newBoard.length; y++)
-			for (int x = 0; x < newBoard[0].length; x++)
-				for (int i = 0; i < newBoard[0][0].length; i++)
-					newBoard[y][x][i] = boardArray[y][x][i]; 
-		
-		// Copy capture lists
-		ArrayList<Byte> nCapturesP0 = new ArrayList<>(capturesP0.size());
-		for (Byte currCapture : capturesP0) nCapturesP0.add(currCapture);
-		ArrayList<Byte> nCapturesP1 = new ArrayList<>(capturesP1.size());
-		for (Byte currCapture : capturesP1) nCapturesP1.add(currCapture);
+		byte piece = getHandPiece(getTurnByte(), captPosition);
+		if (piece != 0) return placePiece(piece, movePos);
+		else return this;
+	}
 
-		// Remove capture from right capture.
-		ArrayList<Byte> capturePtr;
-		if (P0Turn) capturePtr = nCapturesP0;
-		else capturePtr = nCapturesP1;
-		if (captPosition < capturePtr.size())
+	/**
+	* Getter for a game state with a piece from the hand of the side to play moved to the board.
+	* @param piece the type of the piece in hand.
+	* @param movePos the position where the piece is moved to.
+	* @return the new game state.
+	 */
+	public GameState placePiece(byte piece, byte[] movePos)
+	{
+		int[][] nHands = copyHands();
+		if (nHands[getTurnByte() - 1][piece] > 0)
 		{
-			// Add captured piece to board at position
-			newBoard[movePos[0]][movePos[1]] = new byte[] {
-				capturePtr.get(captPosition), 
-				getTurnByte()
-			};
-			capturePtr.remove(captPosition);
+			// Add captured piece to a copy of the board at position
+			Position newPosition = position.copy();
+			newPosition.setPiece(position.toSquare(movePos[0], movePos[1]), piece, getTurnByte());
+			nHands[getTurnByte() - 1][piece]--;
 
 			// Return final game state.
-			return new GameState (newBoard, nCapturesP0, nCapturesP1, !P0Turn, null);
+			return new GameState (shogiRules, newPosition, nHands, !P0Turn, null);
 		}
 		else return this;
 	}
 
+	/**
+	* Getter for a piece in a hand, by it's index when the hand is shown: pieces by
+	* ascending type, each repeated as many times as it is held.
+	* @param camp the camp holding the hand.
+	* @param index the index of the piece.
+	* @return the type of the piece, or 0 if the index is not in the hand.
+	 */
+	public byte getHandPiece(byte camp, int index)
+	{
+		int[] hand = hands[camp - 1];
+		for (byte type = 1; type < hand.length && index >= 0; type++)
+		{
+			if (index < hand[type]) return type;
+			index -= hand[type];
+		}
+		return 0;
+	}
+
+	/**
+	* Getter for the number of pieces in a hand.
+	* @param camp the camp holding the hand.
+	* @return the number of pieces of all types in the hand.
+	 */
+	public int getHandSize(byte camp)
+	{
+		int size = 0;
+		for (int count : hands[camp - 1]) size += count;
+		return size;
+	}
+
+	/**
+	* Getter for a copy of the hands, to change for a new game state.
+	* @return the copy of the number of pieces in hand for each camp, by type.
+	 */
+	private int[][] copyHands()
+	{
+		return new int[][] {hands[0].clone(), hands[1].clone()};
+	}
+
 	/**
 	* Cancels the move selection mode.
 	* @return the new game state.
@@ -205,15 +216,8 @@ public class GameState
 	{
 		if (stateMode == StateMode.MOVE_SELECT)
 		{
-			// Remove 3rd layer from the board array.
-			byte[][][] deboardArray = new byte[boardArray.length][boardArray[0].length][2];
-			for (int y = 0; y < boardArray.length; y++)
-				for (int x = 0; x < boardArray[0].length; x++)
-					for (int i = 0; i < deboardArray[0][0].length; i++)
-						deboardArray[y][x][i] = boardArray[y][x][i];
-
-			// Return the new game state.
-			return new GameState (deboardArray, capturesP0, capturesP1, P0Turn, null);
+			// Return the new game state, without the selection board.
+			return new GameState (shogiRules, position, hands, P0Turn, null);
 		}
 		else
 		{
@@ -223,51 +227,68 @@ public class GameState
 	}
 
 	/**
-	* Indicates that this state is a forfeit.
+	* Indicates that this state is a forfeit of the side to play.
 	* @return this object, but with victory condition.
 	 */
 	public GameState forfeit ()
 	{
-		if (P0Turn) victor = 2;
+		return forfeit(getTurnByte());
+	}
+
+	/**
+	* Indicates that this state is a forfeit of a side, which may be waiting for the other.
+	* @param camp the camp which forfeits.
+	* @return this object, but with victory condition.
+	 */
+	public GameState forfeit (byte camp)
+	{
+		if (camp == 1) victor = 2;
 		else victor = 1;
 		return this;
 	}
 
 	/**
 	* Constructor for a full game state
-	* @param boardArray the array representing types and factions of pieces on the board.
-	* @param capturesP0 the pieces captured by P0.
-	* @param capturesP1 the pieces captured by P1.
+	* @param shogiRules the game rules of the variant played.
+	* @param position the bitboard position of the pieces on the board.
+	* @param hands the number of pieces captured by each camp, by type.
+	* @param P0Turn whether it's P0's turn or not.
+	* @param selectPiece the piece selected.
+	 */
+	public GameState(GameRules shogiRules, Position position, int[][] hands, boolean P0Turn,
+			byte[] selectPiece)
+	{
+		this(shogiRules, position, hands, P0Turn, selectPiece, null);
+	}
+
+	/**
+	* Constructor for a full game state, with possible moves of the selected piece.
+	* @param shogiRules the game rules of the variant played.
+	* @param position the bitboard position of the pieces on the board.
+	* @param hands the number of pieces captured by each camp, by type.
 	* @param P0Turn whether it's P0's turn or not.
 	* @param selectPiece the piece selected.
+	* @param selectBoard the board of possible moves for the selected piece, or null.
 	 */
-	public GameState(byte[][][] boardArray,
-			ArrayList<Byte> capturesP0, 
-			ArrayList<Byte> capturesP1,
-			boolean P0Turn, byte[] selectPiece)
+	public GameState(GameRules shogiRules, Position position, int[][] hands,
+			boolean P0Turn, byte[] selectPiece, byte[][] selectBoard)
 	{
 		// Define variables based on parameters.
-		this.boardArray = boardArray;
-		this.capturesP0 = capturesP0;
-		this.capturesP1 = capturesP1;
+		this.shogiRules = shogiRules;
+		this.position = position;
+		this.hands = hands;
 		this.P0Turn = P0Turn;
 		this.selectPiece = selectPiece;
+		this.selectBoard = selectBoard;
 
-		// Define the state mode on whether the array of possible moves is on the board array.
-		if(boardArray[0][0].length == 3)
+		// Define the state mode on whether there is a board of possible moves.
+		if(selectBoard != null)
 			stateMode = StateMode.MOVE_SELECT;
 		else stateMode = StateMode.PAWN_SELECT;
 
-		// Check board array for kings
-		boolean p0king = false, p1king = false;
-		for (int y = 0; y < boardArray.length; y++)
-			for (int x = 0; x < boardArray[0].length; x++)
-				if (boardArray[y][x][0] == 1)
-				{
-					if (boardArray[y][x][1] == 1)
-						p0king = true;
-					else p1king = true;
-				}
+		// Check bitboards for kings
+		boolean p0king = position.hasPiece((byte) 1, (byte) 1);
+		boolean p1king = position.hasPiece((byte) 1, (byte) 2);
 		if (!p0king) victor = 2;
 		else if (!p1king) victor = 1;
 		else victor = 0;
@@ -281,12 +302,12 @@ public class GameState
 	 */
 	public byte[] selectPiece(byte[] piecePosition)
 	{
-		try
+		if (position.isOnBoard(piecePosition[0], piecePosition[1]))
 		{
 			// Return the wanted piece.
-			return boardArray[piecePosition[0]][piecePosition[1]];
+			return position.getPiece(piecePosition[0], piecePosition[1]);
 		}
-		catch (IndexOutOfBoundsException e) // In case input is out of bounds.
+		else // In case input is out of bounds.
 		{
 			StartShogi.println("[ERROR]: position not within board bounds: " 
 					+ piecePosition[0] + '-' + piecePosition[1]);
@@ -0,0 +1,31 @@
+package LionShogi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight recorder event of the evaluation of a leaf of a search, settling its captures
+ * before taking the reward. Leaves are too many to record each, so only one in SAMPLE_RATE is. */
+@Name("LionShogi.LeafEvaluation")
+@Label("Leaf Evaluation")
+@Category({"LionShogi", "Search", "Sampled"})
+@Description("A sampled evaluation of a leaf, through its quiescence search")
+@StackTrace(false)
+public class LeafEvaluationEvent extends Event
+{
+	// Leaves per recorded leaf.
+	static final int SAMPLE_RATE = 1024;
+
+	@Label("Nodes")
+	@Description("Nodes of the quiescence search")
+	long nodes;
+
+	@Label("Score")
+	int score;
+
+	@Label("Ply")
+	int ply;
+}
@@ -1,6 +1,5 @@
 package LionShogi;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.HashMap;
 
 import javax.json.JsonException;
@@ -11,7 +10,11 @@ import LionShogi.json.*;
 public class LogicHandler implements ShogiSelector
 {
 	// Game rules class for game rules.
-	public static GameRules shogiRules;
+	GameRules shogiRules;
+
+	// Generator of moves from the game rules, and list of a selected piece's moves.
+	MoveGenerator moveGenerator;
+	private MoveList pieceMoves = new MoveList(32);
 
 	// 3D array for board with piece types and piece faction.
 	GameState currentState;
@@ -23,18 +26,13 @@ public class LogicHandler implements ShogiSelector
 	private static final String TUT_KW = "help";
 	private static final String CANCEL_KW = "cancel";
 	private static final String FORFEIT_KW = "give up|forfeit";
+	private static final String MOVE_NOW_KW = "move now";
 	private static final String NUM_RX = "[0-9]*?";
 	private static final String POS_KW = NUM_RX + NUM_SEP + NUM_RX;
 	private static final String MOVE_KW = POS_KW + POS_SEP + POS_KW;
 	private static final String CAPT_KW = "c";
 	private static final String CAPT_RX = CAPT_KW + NUM_RX + "->" + POS_KW;
 
-	// Variables for piece movement reading
-	private static final char PIECE = 'O';
-	private static final char ABS_MOVE = 'X';
-	private static final char REL_MOVE = '/';
-	private static final char NO_MOVE = '-';
-
 	// Information for game state building.
 	private int[] boardDims;
 	boolean gameEnded;
@@ -125,6 +123,35 @@ public class LogicHandler implements ShogiSelector
 		checkVictoryCondition();
 	}
 
+	/**
+	* Processes user input while the bot searches its move: the player can quit, forfeit
+	* or have the bot play at once.
+	* @param userInput the input of the user
+	* @param mainBot the bot searching its move.
+	 */
+	public void processBotRound (String userInput, ShogiBot mainBot)
+	{
+		// Check user input for any keyword.
+		userInput = userInput.toLowerCase();
+		if (userInput.matches(QUIT_KW)) // If quit keyword found
+		{
+			StartShogi.println("Goodbye!");
+			System.exit(0);
+		}
+		else if (userInput.matches(MOVE_NOW_KW)) // Stop the search at once.
+			mainBot.moveNow();
+		else if (userInput.matches(FORFEIT_KW)) // The player forfeits, not the bot.
+		{
+			mainBot.moveNow();
+			currentState = currentState.forfeit((byte) (3 - currentState.getTurnByte()));
+		}
+		else // Moves wait for the bot's move.
+			StartShogi.println("The bot is thinking! Type move now to have it play at once.");
+
+		// Check for victory conditions
+		checkVictoryCondition();
+	}
+
 	/** Checks if victory has been achieved. If it is, end the game. */
 	public void checkVictoryCondition ()
 	{
@@ -178,9 +205,10 @@ public class LogicHandler implements ShogiSelector
 	/**
 	* Loads the logic handler and the game rules to a shogi variant script defined by it's path.
 	* @param filepath the path to the variants file.
-	* @param mainBot the ShogiBot to link to variant for parsing.
+	* @param mainBot the ShogiBot to link to variant for parsing - or any selector of its
+	* bot object.
 	 */
-	public void loadVariant(String filepath, ShogiBot mainBot)
+	public void loadVariant(String filepath, ShogiSelector mainBot)
 	{
 		// Load the script parser.
 		resetVars();
@@ -202,7 +230,16 @@ public class LogicHandler implements ShogiSelector
 			System.exit(0);
 		}
 
-		// Get initial game state
+		// Compile piece moves for the board, and get initial game state.
+		shogiRules.compileMoveTables(boardDims[0], boardDims[1]);
+
+		// Material is summed from piece values, so every piece needs one.
+		byte valueless = shogiRules.getPieceWithoutValue();
+		if (valueless != 0)
+		{
+			System.err.println("ERROR: Piece " + valueless + " has no value!\nQuitting");
+			System.exit(0);
+		}
 		currentState = loadInitialGameState();
 		
 
@@ -231,24 +268,23 @@ public class LogicHandler implements ShogiSelector
 	public GameState loadInitialGameState()
 	{
 		// Initialize game board from board in JSON script.
-		byte[][][] initBoard = new byte[boardDims[0]][boardDims[1]][2];
+		Position initBoard = new Position(boardDims[0], boardDims[1], shogiRules.getPieceTypes());
 		for (int y = 0; y < boardDims[0]; y++)
 			for (int x = 0; x < boardDims[1]; x++)
-				initBoard[y][x] = shogiRules.getPiece(initJsonBoardArr[y][x]);
+			{
+				byte[] piece = shogiRules.getPiece(initJsonBoardArr[y][x]);
+				initBoard.setPiece(initBoard.toSquare(y, x), piece[0], piece[1]);
+			}
 
-		// Initialize captures
-		ArrayList<Byte> capturesP0 = new ArrayList<>();
-		ArrayList<Byte> capturesP1 = new ArrayList<>();
+		// Initialize captures, counted by piece type.
+		int[][] hands = new int[2][shogiRules.getPieceTypes()];
 		for (int i = 0; i < 2; i++)
 			if (captures[i] != null) // Check if this capture is not empty. Else ignore.
-				for (char piece: captures[i]) // Add capture to capture array.
-				{
-					if (i == 0) capturesP0.add(shogiRules.getPiece(piece)[0]);
-					else capturesP1.add(shogiRules.getPiece(piece)[0]);
-				}
+				for (char piece: captures[i]) // Add capture to the hand.
+					hands[i][shogiRules.getPiece(piece)[0]]++;
 
 		// Create game state, starting on black turn with 0 captures.
-		return new GameState(initBoard, capturesP0, capturesP1, true, null);
+		return new GameState(shogiRules, initBoard, hands, true, null);
 	}
 
 	/**
@@ -275,8 +311,8 @@ public class LogicHandler implements ShogiSelector
 
 			int[] currDims = new int[]
 			{
-				watchState.boardArray.length,
-				watchState.boardArray[0].length
+				watchState.position.height,
+				watchState.position.width
 			};
 			if (checkBounds(intPos, currDims))
 			{
@@ -366,96 +402,74 @@ public class LogicHandler implements ShogiSelector
 			return null;
 		}
 
-		char[][] movementProps = shogiRules.getPieceMovement(currentPiece[0]); 
-
-		byte[][][] currBoard = watchState.boardArray; // The board array.
-		byte[][] selectionBoard = new byte[currBoard.length][currBoard[0].length];
-		int[] currDims = new int[] {currBoard.length, currBoard[0].length}; // Dims of the board.
-
-		// Find piece position in piece movement properties.
-		byte[] rel_pos = null;
-		for (byte rel_y = 0; rel_y < movementProps.length; rel_y++)
-			for (byte rel_x = 0; rel_x < movementProps[0].length; rel_x++)
-				if (movementProps[rel_y][rel_x] == PIECE)
-				{
-					rel_pos = new byte[] {
-						rel_y, rel_x
-					};
-					break;
-				}
+		// Get the possible moves for the piece.
+		Position currBoard = watchState.position; // The board position.
+		pieceMoves.clear();
+		moveGenerator.generatePieceMoves(currBoard, currBoard.toSquare(piecePos[0], piecePos[1]),
+				true, true, pieceMoves);
 
-		// Set selection board full of 0s
-		for (int i = 0; i < currDims[0]; i++)
-			for (int j = 0; j < currDims[1]; j++)
-				selectionBoard[i][j] = 0;
-
-		// Check if piece position in movement properties was indeed found.
-		if (rel_pos != null)
+		// Translate possible moves to a selection board of moves and captures.
+		byte[][] selectionBoard = new byte[currBoard.height][currBoard.width];
+		for (int i = 0; i < pieceMoves.size; i++)
 		{
-			// Loop for movement properties and translate chars to possible moves.
-			for (byte i = 0; i < movementProps.length; i++)
-				for (byte j = 0; j < movementProps[0].length; j++)
-				{
-					// Get increment to absolute position.
-					int[] increment;
-					if (currentPiece[1] == 1)
-						increment = new int[] {rel_pos[0] - i, rel_pos[1] - j};
-					else 
-						increment = new int[] {i - rel_pos[0], j - rel_pos[1]};
-
-					// Get absolute position from increment and piece position.
-					int[] absPos = new int[] {
-						piecePos[0] - increment[0], 
-						piecePos[1] - increment[1]
-					};
-
-					// Switch for the movement encountered.
-					switch (movementProps[i][j])
-					{
-						case ABS_MOVE: // If character points to a single move.
-							if (checkBounds(absPos, currDims))
-							{
-								// Add validity to selection board.
-								byte posCamp = currBoard[absPos[0]][absPos[1]][1];
-								selectionBoard[absPos[0]][absPos[1]] = 
-									checkMove(currentPiece[1], posCamp);
-							}
-							break;
-						case REL_MOVE: // If characters points  towards a line.
-						{
-							// Increment increment to absolute position until line breaks.
-							boolean lineBreak = false;
-							while (!lineBreak)
-							{
-								// Check if new absolute position is within bounds.
-								if (checkBounds(absPos, currDims))
-								{
-									// Add validity to selection board.
-									byte lineCamp = currBoard[absPos[0]][absPos[1]][1];
-									selectionBoard[absPos[0]][absPos[1]] = 
-										checkMove(currentPiece[1], lineCamp);
-
-									// Check if line breaks
-									if (selectionBoard[absPos[0]][absPos[1]] != 1)
-										lineBreak = true;
-								}
-								else lineBreak = true;
-
-								// Add increment to absolute position.
-								for (int l = 0; l < 2; l++)
-									absPos[l] -= increment[l];
-							}
-							break;
-						}
-							
-					}
-				}
-			// Return final selection board. 
-			return selectionBoard;
+			int to = ShogiMove.getTo(pieceMoves.moves[i]);
+			if (ShogiMove.isCapture(pieceMoves.moves[i]))
+				selectionBoard[currBoard.getY(to)][currBoard.getX(to)] = 2;
+			else selectionBoard[currBoard.getY(to)][currBoard.getX(to)] = 1;
 		}
+
+		// Return final selection board. 
+		return selectionBoard;
+	}
+
+	/**
+	* Getter for the bitboard of squares a piece can move to, according to it's
+	* movement properties.
+	* @param square the square of the piece to look at.
+	* @param currBoard the board position the piece is on.
+	* @return the bitboard of possible moves, or null if the piece has no movement.
+	 */
+	public long[] getMoveTargets(int square, Position currBoard)
+	{
+		long[] targets = currBoard.newBitBoard();
+		if (getMoveTargets(square, currBoard, targets)) return targets;
 		else return null;
 	}
 
+	/**
+	* Fills a bitboard with the squares a piece can move to, from the move tables compiled
+	* for the board - nothing is allocated.
+	* @param square the square of the piece to look at.
+	* @param currBoard the board position the piece is on.
+	* @param targets the bitboard to fill with possible moves.
+	* @return whether the piece has movement.
+	 */
+	public boolean getMoveTargets(int square, Position currBoard, long[] targets)
+	{
+		// Get the compiled moves of the piece.
+		byte type = currBoard.getType(square);
+		byte camp = currBoard.getCamp(square);
+		int[] steps = shogiRules.getStepTargets(type, camp, square);
+		if (steps == null) return false; // Piece movement is invalid.
+		for (int w = 0; w < currBoard.words; w++) targets[w] = 0;
+
+		// Add single steps which are not onto an allied piece.
+		for (int target : steps)
+			if (checkMove(camp, currBoard.getCamp(target)) != 0)
+				Position.setBit(targets, 0, target);
+
+		// Add squares of each line, until a piece blocks it - an enemy piece can be captured.
+		for (int[] line : shogiRules.getLineTargets(type, camp, square))
+			for (int target : line)
+			{
+				byte lineMove = checkMove(camp, currBoard.getCamp(target));
+				if (lineMove != 0)
+					Position.setBit(targets, 0, target);
+				if (lineMove != 1) break;
+			}
+		return true;
+	}
+
 	/**
 	* Places a capture in the specified game state.
 	* @param userInput the user's input.
@@ -474,13 +488,8 @@ public class LogicHandler implements ShogiSelector
 			captIndex -= 1;
 			byte[] byteMove = getBoardPosition(commandArr[1]);
 
-			// Get right capture array list according to right
-			ArrayList<Byte> captures;
-			if (watchState.P0Turn) captures = watchState.capturesP0;
-			else captures = watchState.capturesP1;
-
 			// Check if all values are correct
-			if (captures.size() <= captIndex) // index is wrong.
+			if (captIndex < 0 || watchState.getHandSize(watchState.getTurnByte()) <= captIndex)
 			{
 				StartShogi.println("[ERROR] index of captured pieces is invalid! " + captIndex);
 				return watchState;
@@ -493,8 +502,8 @@ public class LogicHandler implements ShogiSelector
 				byteMove[0], byteMove[1]
 			};
 			int[] currDims = new int[] {
-				watchState.boardArray.length,
-				watchState.boardArray[0].length
+				watchState.position.height,
+				watchState.position.width
 			};
 
 			// Check if new position is within bounds.
@@ -503,7 +512,8 @@ public class LogicHandler implements ShogiSelector
 				StartShogi.println("[ERROR] position to place piece is out of bounds");
 				return watchState;
 			}
-			else if (watchState.boardArray[intMove[0]][intMove[1]][1] != 0)
+			else if (watchState.position.getCamp(
+						watchState.position.toSquare(intMove[0], intMove[1])) != 0)
 			{
 				StartShogi.println("Can't place a captured piece in a non-empty space !");
 				return watchState;
@@ -526,15 +536,15 @@ public class LogicHandler implements ShogiSelector
 	{
 		// Initialize dimension and blank spaces board.
 		int[] currDims = {
-			watchState.boardArray.length,
-			watchState.boardArray[0].length
+			watchState.position.height,
+			watchState.position.width
 		};
 		byte[][] selectBoard = new byte[currDims[0]][currDims[1]];
 
 		// Loop through all elements of the board array
 		for (int y = 0; y < currDims[0]; y++)
 			for (int x = 0; x < currDims[1]; x++)
-				if (watchState.boardArray[y][x][0] == 0)
+				if (watchState.position.getType(watchState.position.toSquare(y, x)) == 0)
 					selectBoard[y][x] = 1;
 				else selectBoard[y][x] = 0;
 
@@ -609,5 +619,6 @@ public class LogicHandler implements ShogiSelector
 	{
 		resetVars();
 		shogiRules = new GameRules();
+		moveGenerator = new MoveGenerator(shogiRules);
 	}
 }
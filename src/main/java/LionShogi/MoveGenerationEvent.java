@@ -0,0 +1,30 @@
+package LionShogi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight recorder event of the generation of a stage of moves during a search. Generations
+ * are too many to record each, so only one in SAMPLE_RATE is. */
+@Name("LionShogi.MoveGeneration")
+@Label("Move Generation")
+@Category({"LionShogi", "Search", "Sampled"})
+@Description("A sampled generation of a stage of moves")
+@StackTrace(false)
+public class MoveGenerationEvent extends Event
+{
+	// Generations per recorded generation.
+	static final int SAMPLE_RATE = 256;
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Moves")
+	int moves;
+
+	@Label("Ply")
+	int ply;
+}
@@ -0,0 +1,217 @@
+package LionShogi;
+
+/** Class generating encoded moves of a position into reusable move lists, from the move
+ * tables compiled by the game rules. It keeps no state, so threads can share it. */
+public class MoveGenerator
+{
+	// Game rules with the compiled move tables.
+	GameRules shogiRules;
+
+	/**
+	* Adds a board move to a list, with its captured piece and promotion.
+	* @param board the board position the move is played on.
+	* @param from the square the piece moves from.
+	* @param to the square the piece moves to.
+	* @param type the type of the moving piece.
+	* @param camp the camp of the moving piece.
+	* @param moves the list to add the move to.
+	 */
+	private void addBoardMove(Position board, int from, int to, byte type, byte camp,
+			MoveList moves)
+	{
+		// Check if piece is within promotion range.
+		int y = board.getY(to);
+		int dist = shogiRules.getPromotionDist(type);
+		boolean promotes = (camp == 1 && y < dist) || (camp == 2 && y >= board.height - dist);
+		moves.add(ShogiMove.boardMove(from, to, type, board.getType(to), promotes));
+	}
+
+	/**
+	* Adds all moves of a piece on the board to a list.
+	* @param board the board position the piece is on.
+	* @param from the square of the piece.
+	* @param captures whether to add moves which capture an enemy piece.
+	* @param quiets whether to add moves to empty squares.
+	* @param moves the list to add the moves to.
+	 */
+	public void generatePieceMoves(Position board, int from, boolean captures, boolean quiets,
+			MoveList moves)
+	{
+		byte type = board.getType(from);
+		byte camp = board.getCamp(from);
+		int[] steps = shogiRules.getStepTargets(type, camp, from);
+		if (steps == null) return; // Piece has no movement.
+
+		// Add single steps which are not onto an allied piece.
+		for (int to : steps)
+		{
+			byte toCamp = board.getCamp(to);
+			if ((toCamp == 0 && quiets) || (toCamp != 0 && toCamp != camp && captures))
+				addBoardMove(board, from, to, type, camp, moves);
+		}
+
+		// Add squares of each line, until a piece blocks it - an enemy piece can be captured.
+		for (int[] line : shogiRules.getLineTargets(type, camp, from))
+			for (int to : line)
+			{
+				byte toCamp = board.getCamp(to);
+				if (toCamp == camp) break;
+				if ((toCamp == 0 && quiets) || (toCamp != 0 && captures))
+					addBoardMove(board, from, to, type, camp, moves);
+				if (toCamp != 0) break;
+			}
+	}
+
+	/**
+	* Adds all moves of a side to a list: moves of its pieces on the board, then a drop
+	* of each type of piece in its hand on each empty square.
+	* @param board the board position to play on.
+	* @param camp the camp which has to play.
+	* @param hand the number of pieces in hand of the camp, by type.
+	* @param moves the list to add the moves to.
+	 */
+	public void generateMoves(Position board, byte camp, int[] hand, MoveList moves)
+	{
+		// Get all moves for pieces of the side which has to play.
+		int campOffset = board.getCampOffset(camp);
+		for (int square = board.nextSquare(board.campBoards, campOffset, 0); square != -1;
+				square = board.nextSquare(board.campBoards, campOffset, square + 1))
+			generatePieceMoves(board, square, true, true, moves);
+		generateDrops(board, hand, moves);
+	}
+
+	/**
+	* Adds a drop of each type of piece in a hand on each empty square to a list.
+	* @param board the board position to drop on.
+	* @param hand the number of pieces in hand, by type.
+	* @param moves the list to add the drops to.
+	 */
+	public void generateDrops(Position board, int[] hand, MoveList moves)
+	{
+		for (byte type = 1; type < hand.length; type++)
+		{
+			if (hand[type] == 0) continue;
+			for (int square = 0; square < board.squares; square++)
+				if (board.squareCamps[square] == 0)
+					moves.add(ShogiMove.dropMove(type, square));
+		}
+	}
+
+	/**
+	* Fills a list with all moves of a search position.
+	* @param searchPos the position to get the moves of.
+	* @param moves the list to fill.
+	 */
+	public void generateMoves(SearchPosition searchPos, MoveList moves)
+	{
+		moves.clear();
+		byte camp = searchPos.getTurnByte();
+		generateMoves(searchPos.board, camp, searchPos.hands[camp - 1], moves);
+	}
+
+	/**
+	* Fills a list with the board moves of a search position, captures or moves to empty squares.
+	* @param searchPos the position to get the moves of.
+	* @param captures whether to get the moves which capture.
+	* @param moves the list to fill.
+	 */
+	public void generateBoardMoves(SearchPosition searchPos, boolean captures, MoveList moves)
+	{
+		moves.clear();
+		Position board = searchPos.board;
+		int campOffset = board.getCampOffset(searchPos.getTurnByte());
+		for (int square = board.nextSquare(board.campBoards, campOffset, 0); square != -1;
+				square = board.nextSquare(board.campBoards, campOffset, square + 1))
+			generatePieceMoves(board, square, captures, !captures, moves);
+	}
+
+	/**
+	* Fills a list with the drops of a search position.
+	* @param searchPos the position to get the drops of.
+	* @param moves the list to fill.
+	 */
+	public void generateDrops(SearchPosition searchPos, MoveList moves)
+	{
+		moves.clear();
+		generateDrops(searchPos.board, searchPos.hands[searchPos.getTurnByte() - 1], moves);
+	}
+
+	/**
+	* Checks if a move, such as a stored best move or a killer move, can be played on a
+	* search position: it must be one of the moves generated for the position.
+	* @param searchPos the position to play the move on.
+	* @param move the encoded move.
+	* @return whether the move can be played.
+	 */
+	public boolean isPseudoLegal(SearchPosition searchPos, int move)
+	{
+		Position board = searchPos.board;
+		byte camp = searchPos.getTurnByte();
+		byte type = ShogiMove.getPiece(move);
+		int to = ShogiMove.getTo(move);
+		if (type <= 0 || type >= board.pieceTypes || to >= board.squares) return false;
+
+		// A drop needs the piece in hand and an empty square.
+		if (ShogiMove.isDrop(move))
+			return searchPos.hands[camp - 1][type] > 0 && board.getCamp(to) == 0;
+
+		// A board move needs the piece on it's origin and the same piece on the destination.
+		int from = ShogiMove.getFrom(move);
+		byte captured = ShogiMove.getCaptured(move);
+		if (from >= board.squares || board.getType(from) != type || board.getCamp(from) != camp
+				|| board.getType(to) != captured || (captured != 0 && board.getCamp(to) == camp))
+			return false;
+
+		// The piece must reach the destination in a step or along an unblocked line.
+		int[] steps = shogiRules.getStepTargets(type, camp, from);
+		if (steps == null) return false;
+		for (int target : steps)
+			if (target == to) return true;
+		for (int[] line : shogiRules.getLineTargets(type, camp, from))
+			for (int target : line)
+			{
+				if (target == to) return true;
+				if (board.getCamp(target) != 0) break;
+			}
+		return false;
+	}
+
+	/**
+	* Checks if a square is attacked by a piece of a camp.
+	* @param board the board position to look at.
+	* @param square the square which may be attacked.
+	* @param camp the camp of the attacking pieces.
+	* @return whether a piece of the camp can move to the square.
+	 */
+	public boolean isAttacked(Position board, int square, byte camp)
+	{
+		int campOffset = board.getCampOffset(camp);
+		for (int from = board.nextSquare(board.campBoards, campOffset, 0); from != -1;
+				from = board.nextSquare(board.campBoards, campOffset, from + 1))
+		{
+			byte type = board.getType(from);
+			int[] steps = shogiRules.getStepTargets(type, camp, from);
+			if (steps == null) continue;
+			for (int to : steps)
+				if (to == square) return true;
+
+			// Follow lines until they reach the square or are blocked.
+			for (int[] line : shogiRules.getLineTargets(type, camp, from))
+				for (int to : line)
+				{
+					if (to == square) return true;
+					if (board.getCamp(to) != 0) break;
+				}
+		}
+		return false;
+	}
+
+	/**
+	* Constructor for a move generator.
+	* @param shogiRules the game rules with compiled move tables.
+	 */
+	public MoveGenerator(GameRules shogiRules)
+	{
+		this.shogiRules = shogiRules;
+	}
+}
@@ -0,0 +1,45 @@
+package LionShogi;
+
+import java.util.Arrays;
+
+/** Class for a reusable buffer of encoded moves, filled by the move generator. */
+public class MoveList
+{
+	// Encoded moves and the number of them in use.
+	int[] moves;
+	int size;
+
+	/**
+	* Adds a move at the end of the list, growing the buffer if it is full.
+	* @param move the encoded move.
+	 */
+	public void add(int move)
+	{
+		if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+		moves[size++] = move;
+	}
+
+	/** Empties the list, keeping its buffer. */
+	public void clear()
+	{
+		size = 0;
+	}
+
+	/**
+	* Getter for a copy of the moves in the list.
+	* @return the array of encoded moves.
+	 */
+	public int[] toArray()
+	{
+		return Arrays.copyOf(moves, size);
+	}
+
+	/**
+	* Constructor for a move list.
+	* @param capacity the number of moves the buffer holds before growing.
+	 */
+	public MoveList(int capacity)
+	{
+		moves = new int[Math.max(capacity, 1)];
+	}
+}
@@ -0,0 +1,154 @@
+package LionShogi;
+
+import java.util.Arrays;
+
+/** Class ordering moves for the search: the hash move, captures by victim and attacker
+ * value, killer moves of the ply, then quiet moves by their history of cutoffs. */
+public class MoveOrdering
+{
+	// Scores of each kind of move - captures get their value difference on top.
+	private static final int HASH_SCORE = Integer.MAX_VALUE;
+	private static final int CAPTURE_SCORE = 1 << 24;
+	private static final int KILLER_SCORE = 1 << 23;
+	private static final int HISTORY_MAX = KILLER_SCORE - 2;
+
+	// Number of plies with killer moves, and killer moves kept per ply.
+	private static final int MAX_PLY = 128;
+	private static final int KILLERS = 2;
+
+	// Game rules for piece values.
+	GameRules shogiRules;
+
+	// Quiet moves which caused cutoffs, by ply, and cutoff history of moves for each camp.
+	private int[][] killers = new int[MAX_PLY][KILLERS];
+	private int[] history;
+	private int squares;
+	private int campHistorySize;
+
+	// Scores of the moves being ordered.
+	private int[] scores = new int[64];
+
+	/**
+	* Getter for the index of a move in the history table.
+	* @param camp the camp playing the move.
+	* @param move the encoded move.
+	* @return the index of the move for that camp.
+	 */
+	private int getHistoryIndex(byte camp, int move)
+	{
+		int origin;
+		if (ShogiMove.isDrop(move)) origin = squares + ShogiMove.getDropType(move);
+		else origin = ShogiMove.getFrom(move);
+		return (camp - 1) * campHistorySize + origin * squares + ShogiMove.getTo(move);
+	}
+
+	/**
+	* Getter for a killer move of a ply.
+	* @param ply the number of moves played since the root.
+	* @param slot the index of the killer move, 0 for the most recent.
+	* @return the encoded killer move, or 0 if there is none.
+	 */
+	public int getKiller(int ply, int slot)
+	{
+		if (ply < MAX_PLY) return killers[ply][slot];
+		else return 0;
+	}
+
+	/**
+	* Empties killer moves and history, and sizes history for a board.
+	* @param board the board of the search.
+	 */
+	public void clear(Position board)
+	{
+		for (int[] plyKillers : killers) Arrays.fill(plyKillers, 0);
+		squares = board.squares;
+		campHistorySize = (board.squares + board.pieceTypes) * board.squares;
+		if (history == null || history.length != 2 * campHistorySize)
+			history = new int[2 * campHistorySize];
+		else Arrays.fill(history, 0);
+	}
+
+	/**
+	* Sorts moves from the most to the least promising.
+	* @param searchPos the position the moves are played in.
+	* @param moves the encoded moves to sort.
+	* @param count the number of moves in use at the start of the array.
+	* @param hashMove the best move stored for the position, or 0.
+	* @param ply the number of moves played since the root.
+	 */
+	public void orderMoves(SearchPosition searchPos, int[] moves, int count, int hashMove, int ply)
+	{
+		if (history == null) clear(searchPos.board);
+		if (scores.length < count) scores = new int[count * 2];
+		int[] values = shogiRules.getValueTable();
+		byte camp = searchPos.getTurnByte();
+
+		// Score each move.
+		for (int i = 0; i < count; i++)
+		{
+			int move = moves[i];
+			if (move == hashMove)
+				scores[i] = HASH_SCORE;
+			else if (ShogiMove.isCapture(move))
+				scores[i] = CAPTURE_SCORE + values[ShogiMove.getCaptured(move)]
+					- values[ShogiMove.getPiece(move)];
+			else if (ply < MAX_PLY && move == killers[ply][0])
+				scores[i] = KILLER_SCORE + 1;
+			else if (ply < MAX_PLY && move == killers[ply][1])
+				scores[i] = KILLER_SCORE;
+			else scores[i] = history[getHistoryIndex(camp, move)];
+		}
+
+		// Insertion sort by descending score - move lists are short.
+		for (int i = 1; i < count; i++)
+		{
+			int move = moves[i];
+			int score = scores[i];
+			int j = i - 1;
+			while (j >= 0 && scores[j] < score)
+			{
+				moves[j + 1] = moves[j];
+				scores[j + 1] = scores[j];
+				j--;
+			}
+			moves[j + 1] = move;
+			scores[j + 1] = score;
+		}
+	}
+
+	/**
+	* Records a move which caused a cutoff: quiet moves become killers of the ply and
+	* gain history, more so the deeper the cutoff.
+	* @param searchPos the position the move was played in.
+	* @param move the encoded move.
+	* @param ply the number of moves played since the root.
+	* @param layer the depth layer left to search at the position.
+	 */
+	public void recordCutoff(SearchPosition searchPos, int move, int ply, int layer)
+	{
+		if (ShogiMove.isCapture(move)) return; // Captures are ordered by value instead.
+		if (history == null) clear(searchPos.board);
+
+		// Shift killers of the ply.
+		if (ply < MAX_PLY && killers[ply][0] != move)
+		{
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+
+		// Add to history, halving all history if it gets too high.
+		int index = getHistoryIndex(searchPos.getTurnByte(), move);
+		history[index] += layer * layer;
+		if (history[index] > HISTORY_MAX)
+			for (int i = 0; i < history.length; i++) history[i] /= 2;
+	}
+
+	/**
+	* Constructor for a move ordering.
+	* @param shogiRules the game rules for piece values.
+	 */
+	public MoveOrdering(GameRules shogiRules)
+	{
+		this.shogiRules = shogiRules;
+	}
+}
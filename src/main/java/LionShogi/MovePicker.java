@@ -0,0 +1,171 @@
+package LionShogi;
+
+/** Class picking the moves of a search position one at a time, in stages: the hash move,
+ * captures, killer moves, quiet board moves, then drops. Each stage's moves are only
+ * generated when the previous stage runs out, so a cutoff skips generating the rest. */
+public class MovePicker
+{
+	// Stages of the picker, in the order moves are picked.
+	private static final int HASH = 0;
+	private static final int CAPTURES = 1;
+	private static final int KILLERS = 2;
+	private static final int QUIETS = 3;
+	private static final int DROPS = 4;
+	private static final int DONE = 5;
+	private static final String[] STAGE_NAMES = {"hash", "captures", "killers", "quiets", "drops"};
+
+	// Generator of moves and ordering of moves in a stage.
+	MoveGenerator moveGenerator;
+	MoveOrdering ordering;
+
+	// Position the moves are picked for, and its stored best move and ply.
+	private SearchPosition searchPos;
+	private int hashMove;
+	private int ply;
+	private boolean capturesOnly;
+
+	// Current stage, moves of the stage, and index of the next move to pick in them.
+	private int stage;
+	private MoveList stageMoves = new MoveList(64);
+	private int index;
+	private boolean capturesGenerated;
+
+	// Killer moves which were picked, so that later stages skip them.
+	private int killer0;
+	private int killer1;
+
+	// Number of stages generated, for sampling flight recorder events.
+	int generations;
+
+	/**
+	* Starts picking moves for a position.
+	* @param searchPos the position to pick the moves of.
+	* @param hashMove the best move stored for the position, or 0.
+	* @param ply the number of moves played since the root.
+	* @param capturesOnly whether to only pick captures, for the quiescence search.
+	 */
+	public void init(SearchPosition searchPos, int hashMove, int ply, boolean capturesOnly)
+	{
+		this.searchPos = searchPos;
+		this.ply = ply;
+		this.capturesOnly = capturesOnly;
+		this.hashMove = 0;
+		if (hashMove != 0 && !capturesOnly && moveGenerator.isPseudoLegal(searchPos, hashMove))
+			this.hashMove = hashMove;
+		killer0 = 0;
+		killer1 = 0;
+		stage = HASH;
+		stageMoves.clear();
+		index = 0;
+		capturesGenerated = false;
+	}
+
+	/**
+	* Getter for the next move to search.
+	* @return the encoded move, or 0 once all moves were picked.
+	 */
+	public int nextMove()
+	{
+		while (stage != DONE)
+		{
+			switch (stage)
+			{
+				case HASH: // Stored best move first, before generating anything.
+					stage = CAPTURES;
+					if (hashMove != 0) return hashMove;
+					break;
+				case CAPTURES: // Generate captures once the hash move did not cut off.
+					if (!capturesGenerated)
+					{
+						generateStage();
+						capturesGenerated = true;
+					}
+					while (index < stageMoves.size)
+					{
+						int move = stageMoves.moves[index++];
+						if (move != hashMove) return move;
+					}
+					if (capturesOnly) stage = DONE;
+					else
+					{
+						stage = KILLERS;
+						index = 0;
+					}
+					break;
+				case KILLERS: // Killer moves which are quiet moves of this position.
+					while (index < 2)
+					{
+						int killer = ordering.getKiller(ply, index++);
+						if (killer == 0 || killer == hashMove || ShogiMove.isCapture(killer)
+								|| !moveGenerator.isPseudoLegal(searchPos, killer))
+							continue;
+						if (killer0 == 0) killer0 = killer;
+						else killer1 = killer;
+						return killer;
+					}
+					stage = QUIETS;
+					generateStage();
+					break;
+				case QUIETS:
+				case DROPS:
+					while (index < stageMoves.size)
+					{
+						int move = stageMoves.moves[index++];
+						if (move != hashMove && move != killer0 && move != killer1) return move;
+					}
+					if (stage == QUIETS) // Generate drops last.
+					{
+						stage = DROPS;
+						generateStage();
+					}
+					else stage = DONE;
+					break;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	* Generates and orders the moves of the current stage, recording one generation in a
+	* sample with a flight recorder event.
+	 */
+	private void generateStage()
+	{
+		MoveGenerationEvent event = null;
+		if (++generations % MoveGenerationEvent.SAMPLE_RATE == 0)
+		{
+			event = new MoveGenerationEvent();
+			event.begin();
+		}
+
+		// Generate the moves of the stage.
+		if (stage == DROPS) moveGenerator.generateDrops(searchPos, stageMoves);
+		else moveGenerator.generateBoardMoves(searchPos, stage == CAPTURES, stageMoves);
+		if (event != null)
+		{
+			event.end();
+			if (event.shouldCommit())
+			{
+				event.stage = STAGE_NAMES[stage];
+				event.moves = stageMoves.size;
+				event.ply = ply;
+				event.commit();
+			}
+		}
+
+		// Order them from the most promising.
+		ordering.orderMoves(searchPos, stageMoves.moves, stageMoves.size, 0, ply);
+		index = 0;
+	}
+
+	/**
+	* Constructor for a move picker.
+	* @param moveGenerator the generator of moves.
+	* @param ordering the ordering of moves within a stage.
+	 */
+	public MovePicker(MoveGenerator moveGenerator, MoveOrdering ordering)
+	{
+		this.moveGenerator = moveGenerator;
+		this.ordering = ordering;
+	}
+}
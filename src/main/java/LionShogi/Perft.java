@@ -0,0 +1,138 @@
+package LionShogi;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Class counting the positions reached after a number of moves (perft), to check move
+ * generation against known counts and to measure its speed. A game which ends before the
+ * last layer has no positions below it. */
+public class Perft
+{
+	// Most layers counted, for the move lists of each ply.
+	private static final int MAX_DEPTH = 64;
+
+	// Bot giving the moves and game states of positions.
+	ShogiBot mainBot;
+
+	// Whether to print the count of each root move, count through game states instead of
+	// making and unmaking moves, and number of threads splitting the root moves.
+	boolean divide = false;
+	boolean states = false;
+	int threads = 1;
+
+	/**
+	* Counts the positions reached from a search position, making and unmaking moves.
+	* @param searchPos the position to count from.
+	* @param depth the number of moves to play.
+	* @param plyMoves the move list of each remaining depth.
+	* @return the number of positions at that depth.
+	 */
+	public long count(SearchPosition searchPos, int depth, MoveList[] plyMoves)
+	{
+		if (depth == 0) return 1;
+		if (searchPos.victor != 0) return 0;
+		MoveList moves = plyMoves[depth];
+		mainBot.moveGenerator.generateMoves(searchPos, moves);
+		if (depth == 1) return moves.size;
+
+		long nodes = 0;
+		for (int i = 0; i < moves.size; i++)
+		{
+			int move = moves.moves[i];
+			searchPos.makeMove(move);
+			nodes += count(searchPos, depth - 1, plyMoves);
+			searchPos.unmakeMove(move);
+		}
+		return nodes;
+	}
+
+	/**
+	* Counts the positions reached from a game state, through all its next game states.
+	* @param state the game state to count from.
+	* @param depth the number of moves to play.
+	* @return the number of positions at that depth.
+	 */
+	public long countStates(GameState state, int depth)
+	{
+		if (depth == 0) return 1;
+		if (state.victor != 0) return 0;
+		long nodes = 0;
+		for (GameState nextState : mainBot.getAllGameStates(state))
+			nodes += countStates(nextState, depth - 1);
+		return nodes;
+	}
+
+	/**
+	* Counts the positions reached from a game state, splitting root moves between threads.
+	* @param state the game state to count from.
+	* @param depth the number of moves to play, at least 1.
+	* @return the number of positions at that depth.
+	 */
+	public long run(GameState state, int depth)
+	{
+		if (depth > MAX_DEPTH)
+		{
+			System.out.println("ERROR: Perft depth is at most " + MAX_DEPTH);
+			return 0;
+		}
+		SearchPosition rootPos = new SearchPosition(state, mainBot.getZobrist(state));
+		int[] rootMoves = new int[0];
+		if (state.victor == 0) rootMoves = mainBot.getAllMoves(rootPos);
+		final int[] moves = rootMoves;
+
+		// Count below each root move, on its own thread if there are several.
+		long[] counts = new long[rootMoves.length];
+		RecursiveAction[] tasks = new RecursiveAction[rootMoves.length];
+		for (int i = 0; i < rootMoves.length; i++)
+		{
+			final int index = i;
+			tasks[i] = new RecursiveAction()
+			{
+				@Override
+				protected void compute()
+				{
+					int move = moves[index];
+					if (states)
+						counts[index] = countStates(ShogiMove.applyTo(state, move), depth - 1);
+					else
+					{
+						SearchPosition searchPos = new SearchPosition(rootPos);
+						MoveList[] plyMoves = new MoveList[depth];
+						for (int ply = 0; ply < depth; ply++) plyMoves[ply] = new MoveList(64);
+						searchPos.makeMove(move);
+						counts[index] = count(searchPos, depth - 1, plyMoves);
+					}
+				}
+			};
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		pool.invoke(new RecursiveAction()
+		{
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
+		pool.shutdown();
+
+		// Sum counts, showing each root move's if dividing.
+		long nodes = 0;
+		for (int i = 0; i < rootMoves.length; i++)
+		{
+			if (divide)
+				System.out.println(ShogiMove.toCommand(state, rootMoves[i]) + ": " + counts[i]);
+			nodes += counts[i];
+		}
+		return nodes;
+	}
+
+	/**
+	* Constructor for a perft counter.
+	* @param mainBot the bot giving the moves of positions, for the loaded variant.
+	 */
+	public Perft(ShogiBot mainBot)
+	{
+		this.mainBot = mainBot;
+	}
+}
@@ -0,0 +1,288 @@
+package LionShogi;
+
+/** Class representing the pieces on a board as bitboards - one per piece type and camp. */
+public class Position
+{
+	// Dimensions of the board and of each of its bitboards.
+	final int height;
+	final int width;
+	final int squares;
+	final int words;
+	final int pieceTypes;
+
+	// Bitboards for each piece type of each camp, and occupancy of each camp.
+	long[] pieceBoards;
+	long[] campBoards;
+
+	// Square indexed copy of the board for quick piece lookups.
+	byte[] squareTypes;
+	byte[] squareCamps;
+
+	/**
+	* Getter for the square index of a board position.
+	* @param y the row of the position.
+	* @param x the column of the position.
+	* @return the square index of that position.
+	 */
+	public int toSquare(int y, int x)
+	{
+		return y * width + x;
+	}
+
+	/**
+	* Getter for the row of a square.
+	* @param square the square index.
+	* @return the row of the square on the board.
+	 */
+	public int getY(int square)
+	{
+		return square / width;
+	}
+
+	/**
+	* Getter for the column of a square.
+	* @param square the square index.
+	* @return the column of the square on the board.
+	 */
+	public int getX(int square)
+	{
+		return square % width;
+	}
+
+	/**
+	* Getter for the type of the piece on a square.
+	* @param square the square index.
+	* @return the piece type, or 0 if the square is empty.
+	 */
+	public byte getType(int square)
+	{
+		return squareTypes[square];
+	}
+
+	/**
+	* Getter for the camp of the piece on a square.
+	* @param square the square index.
+	* @return the camp of the piece (1 or 2), or 0 if the square is empty.
+	 */
+	public byte getCamp(int square)
+	{
+		return squareCamps[square];
+	}
+
+	/**
+	* Getter for a piece as a type and camp pair.
+	* @param y the row of the piece.
+	* @param x the column of the piece.
+	* @return the piece as a byte array - type then camp.
+	 */
+	public byte[] getPiece(int y, int x)
+	{
+		int square = toSquare(y, x);
+		return new byte[] {squareTypes[square], squareCamps[square]};
+	}
+
+	/**
+	* Checks if a position is within the board.
+	* @param y the row of the position.
+	* @param x the column of the position.
+	* @return whether the position is on the board.
+	 */
+	public boolean isOnBoard(int y, int x)
+	{
+		return y >= 0 && y < height && x >= 0 && x < width;
+	}
+
+	/**
+	* Puts a piece on a square, replacing whatever was there.
+	* @param square the square index.
+	* @param type the type of the piece.
+	* @param camp the camp of the piece.
+	 */
+	public void setPiece(int square, byte type, byte camp)
+	{
+		clearSquare(square);
+		if (camp == 0) return; // Nothing else to do for empty pieces.
+
+		// Update bitboards, then square lookups.
+		int word = square >>> 6;
+		long bit = 1L << (square & 63);
+		pieceBoards[getBoardOffset(type, camp) + word] |= bit;
+		campBoards[(camp - 1) * words + word] |= bit;
+		squareTypes[square] = type;
+		squareCamps[square] = camp;
+	}
+
+	/**
+	* Removes the piece on a square, if any.
+	* @param square the square index.
+	 */
+	public void clearSquare(int square)
+	{
+		byte camp = squareCamps[square];
+		if (camp == 0) return; // Square already empty.
+
+		// Remove bit from bitboards, then empty square lookups.
+		int word = square >>> 6;
+		long mask = ~(1L << (square & 63));
+		pieceBoards[getBoardOffset(squareTypes[square], camp) + word] &= mask;
+		campBoards[(camp - 1) * words + word] &= mask;
+		squareTypes[square] = 0;
+		squareCamps[square] = 0;
+	}
+
+	/**
+	* Checks if a camp has at least one piece of a type on the board.
+	* @param type the piece type.
+	* @param camp the camp of the piece.
+	* @return whether the piece is on the board.
+	 */
+	public boolean hasPiece(byte type, byte camp)
+	{
+		int offset = getBoardOffset(type, camp);
+		for (int i = 0; i < words; i++)
+			if (pieceBoards[offset + i] != 0) return true;
+		return false;
+	}
+
+	/**
+	* Getter for the offset of a piece bitboard in the piece boards array.
+	* @param type the piece type.
+	* @param camp the camp of the piece.
+	* @return the offset of the first word of that bitboard.
+	 */
+	public int getBoardOffset(byte type, byte camp)
+	{
+		return ((camp - 1) * pieceTypes + type) * words;
+	}
+
+	/**
+	* Getter for the offset of a camp's occupancy bitboard in the camp boards array.
+	* @param camp the camp.
+	* @return the offset of the first word of that bitboard.
+	 */
+	public int getCampOffset(byte camp)
+	{
+		return (camp - 1) * words;
+	}
+
+	/**
+	* Fills a bitboard with all empty squares of the board.
+	* @param emptyBoard the bitboard to fill.
+	 */
+	public void getEmptyBoard(long[] emptyBoard)
+	{
+		for (int i = 0; i < words; i++)
+			emptyBoard[i] = ~(campBoards[i] | campBoards[words + i]) & getSquareMask(i);
+	}
+
+	/**
+	* Getter for a new empty bitboard the size of this board.
+	* @return the bitboard.
+	 */
+	public long[] newBitBoard()
+	{
+		return new long[words];
+	}
+
+	/**
+	* Getter for the mask of valid squares for a word of a bitboard.
+	* @param word the index of the word.
+	* @return the mask of squares on the board for that word.
+	 */
+	public long getSquareMask(int word)
+	{
+		int remaining = squares - (word << 6);
+		if (remaining >= 64) return -1L;
+		else return (1L << remaining) - 1;
+	}
+
+	/**
+	* Getter for the next set square of a bitboard, starting from a square.
+	* @param bitBoard the array containing the bitboard.
+	* @param offset the offset of the bitboard in the array.
+	* @param fromSquare the first square to check.
+	* @return the next set square, or -1 if there is none.
+	 */
+	public int nextSquare(long[] bitBoard, int offset, int fromSquare)
+	{
+		int word = fromSquare >>> 6;
+		if (word >= words) return -1;
+
+		// Mask squares before the first square, then look word by word.
+		long current = bitBoard[offset + word] & (-1L << (fromSquare & 63));
+		while (current == 0)
+		{
+			if (++word >= words) return -1;
+			current = bitBoard[offset + word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(current);
+	}
+
+	/**
+	* Copies the content of another position of the same dimensions into this one.
+	* @param other the position to copy.
+	 */
+	public void copyFrom(Position other)
+	{
+		System.arraycopy(other.pieceBoards, 0, pieceBoards, 0, pieceBoards.length);
+		System.arraycopy(other.campBoards, 0, campBoards, 0, campBoards.length);
+		System.arraycopy(other.squareTypes, 0, squareTypes, 0, squares);
+		System.arraycopy(other.squareCamps, 0, squareCamps, 0, squares);
+	}
+
+	/**
+	* Getter for a copy of this position.
+	* @return the new position.
+	 */
+	public Position copy()
+	{
+		Position newPosition = new Position(height, width, pieceTypes);
+		newPosition.copyFrom(this);
+		return newPosition;
+	}
+
+	/**
+	* Sets a bit on a bitboard.
+	* @param bitBoard the array containing the bitboard.
+	* @param offset the offset of the bitboard in the array.
+	* @param square the square to set.
+	 */
+	public static void setBit(long[] bitBoard, int offset, int square)
+	{
+		bitBoard[offset + (square >>> 6)] |= 1L << (square & 63);
+	}
+
+	/**
+	* Checks a bit on a bitboard.
+	* @param bitBoard the array containing the bitboard.
+	* @param offset the offset of the bitboard in the array.
+	* @param square the square to check.
+	* @return whether the bit of that square is set.
+	 */
+	public static boolean testBit(long[] bitBoard, int offset, int square)
+	{
+		return (bitBoard[offset + (square >>> 6)] & (1L << (square & 63))) != 0;
+	}
+
+	/**
+	* Constructor for an empty position.
+	* @param height the height of the board.
+	* @param width the width of the board.
+	* @param pieceTypes the number of piece types, including the empty type 0.
+	 */
+	public Position(int height, int width, int pieceTypes)
+	{
+		// Define dimensions - 3x4 boards fit in a long, 9x9 boards in a pair of them.
+		this.height = height;
+		this.width = width;
+		this.squares = height * width;
+		this.words = (squares + 63) >>> 6;
+		this.pieceTypes = pieceTypes;
+
+		// Initialize bitboards and square lookups.
+		pieceBoards = new long[2 * pieceTypes * words];
+		campBoards = new long[2 * words];
+		squareTypes = new byte[squares];
+		squareCamps = new byte[squares];
+	}
+}
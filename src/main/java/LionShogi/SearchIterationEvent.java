@@ -0,0 +1,32 @@
+package LionShogi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight recorder event of one iteration of a bot's iterative deepening search. */
+@Name("LionShogi.SearchIteration")
+@Label("Search Iteration")
+@Category({"LionShogi", "Search"})
+@Description("A bot searching the root one layer deeper")
+public class SearchIterationEvent extends Event
+{
+	@Label("Layer")
+	int layer;
+
+	@Label("Nodes")
+	@Description("Nodes of the search since its start")
+	long nodes;
+
+	@Label("Score")
+	int score;
+
+	@Label("Move")
+	String move;
+
+	@Label("Aborted")
+	@Description("Whether the iteration ran out of time, keeping the move of the last one")
+	boolean aborted;
+}
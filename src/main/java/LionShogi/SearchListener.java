@@ -0,0 +1,16 @@
+package LionShogi;
+
+/** Interface told of each layer the bot's search finishes, for engine protocols to stream. */
+public interface SearchListener
+{
+	/**
+	* Called on the search's thread once it finished a layer.
+	* @param layer the layer finished, 0 for the root moves alone.
+	* @param score the search's value of the best move, as the material the bot gains over
+	* the best line.
+	* @param nodes the number of nodes searched so far.
+	* @param time the time since the search started in milliseconds.
+	* @param move the encoded best move of the layer.
+	 */
+	public void onLayer(int layer, int score, long nodes, long time, int move);
+}
@@ -0,0 +1,231 @@
+package LionShogi;
+
+import java.util.Arrays;
+
+/** Class representing a mutable game position for searching, with moves made and unmade in place. */
+public class SearchPosition
+{
+	// Size of the undo stack before it needs to grow.
+	private static final int MAX_PLY = 128;
+
+	// State of the position: board, pieces in hand for each camp, turn and victor.
+	Position board;
+	int[][] hands;
+	boolean P0Turn;
+	byte victor;
+
+	// Hash key of the position, kept up to date on each move.
+	Zobrist zobrist;
+	long hashKey;
+
+	// Value of the pieces each camp has on the board and in hand, kept up to date on each move.
+	int[] material = new int[2];
+	private int[] pieceValues;
+
+	// Game rules for promotions and demotions.
+	private GameRules shogiRules;
+
+	// Undo information for each move made - the move itself holds the pieces it changed.
+	private long[] undoHash = new long[MAX_PLY];
+	private byte[] undoVictor = new byte[MAX_PLY];
+	private int ply = 0;
+
+	/**
+	* Getter for the turn of the position as a byte.
+	* @return the camp which has to play.
+	 */
+	public byte getTurnByte()
+	{
+		if (P0Turn) return 1;
+		else return 2;
+	}
+
+	/**
+	* Getter for the number of moves made on this position since it was built.
+	* @return the ply of the position.
+	 */
+	public int getPly()
+	{
+		return ply;
+	}
+
+	/**
+	* Plays a move on this position.
+	* @param move the encoded move to play.
+	 */
+	public void makeMove(int move)
+	{
+		// Grow undo stack if search goes deeper than expected.
+		if (ply == undoVictor.length)
+		{
+			undoVictor = Arrays.copyOf(undoVictor, ply * 2);
+			undoHash = Arrays.copyOf(undoHash, ply * 2);
+		}
+
+		byte camp = getTurnByte();
+		int to = ShogiMove.getTo(move);
+		undoVictor[ply] = victor;
+		undoHash[ply] = hashKey;
+
+		if (ShogiMove.isDrop(move)) // Move piece from the hand to the board.
+		{
+			byte type = ShogiMove.getPiece(move);
+			int count = hands[camp - 1][type]--;
+			board.setPiece(to, type, camp);
+			hashKey ^= zobrist.getHandKey(type, camp, count)
+				^ zobrist.getHandKey(type, camp, count - 1)
+				^ zobrist.getPieceKey(type, camp, to);
+		}
+		else
+		{
+			int from = ShogiMove.getFrom(move);
+			byte moved = ShogiMove.getPiece(move);
+			byte captured = ShogiMove.getCaptured(move);
+
+			// Add demoted captured piece to hand, and check if it was a king.
+			if (captured != 0)
+			{
+				byte demoted = shogiRules.getDemoteType(captured);
+				int count = hands[camp - 1][demoted]++;
+				hashKey ^= zobrist.getPieceKey(captured, (byte) (3 - camp), to)
+					^ zobrist.getHandKey(demoted, camp, count)
+					^ zobrist.getHandKey(demoted, camp, count + 1);
+				material[2 - camp] -= pieceValues[captured];
+				material[camp - 1] += pieceValues[demoted];
+				if (captured == 1) victor = camp;
+			}
+
+			// Promote the piece if the move enters it's promotion range.
+			byte newType = moved;
+			if (ShogiMove.isPromotion(move)) newType = shogiRules.getPromotion(moved);
+
+			// Move piece on the board.
+			board.clearSquare(from);
+			board.setPiece(to, newType, camp);
+			material[camp - 1] += pieceValues[newType] - pieceValues[moved];
+			hashKey ^= zobrist.getPieceKey(moved, camp, from)
+				^ zobrist.getPieceKey(newType, camp, to);
+		}
+
+		// Switch turn.
+		P0Turn = !P0Turn;
+		hashKey ^= zobrist.sideKey;
+		ply++;
+	}
+
+	/**
+	* Takes back a move which was the last move played on this position.
+	* @param move the encoded move to take back.
+	 */
+	public void unmakeMove(int move)
+	{
+		// Switch turn back.
+		ply--;
+		P0Turn = !P0Turn;
+		byte camp = getTurnByte();
+		int to = ShogiMove.getTo(move);
+		victor = undoVictor[ply];
+		hashKey = undoHash[ply];
+
+		if (ShogiMove.isDrop(move)) // Move piece back to the hand.
+		{
+			board.clearSquare(to);
+			hands[camp - 1][ShogiMove.getPiece(move)]++;
+		}
+		else
+		{
+			// Move piece back to it's origin, unpromoted.
+			byte moved = ShogiMove.getPiece(move);
+			material[camp - 1] -= pieceValues[board.getType(to)] - pieceValues[moved];
+			board.setPiece(ShogiMove.getFrom(move), moved, camp);
+			byte captured = ShogiMove.getCaptured(move);
+
+			// Give captured piece back to the other camp.
+			if (captured != 0)
+			{
+				byte demoted = shogiRules.getDemoteType(captured);
+				board.setPiece(to, captured, (byte) (3 - camp));
+				hands[camp - 1][demoted]--;
+				material[2 - camp] += pieceValues[captured];
+				material[camp - 1] -= pieceValues[demoted];
+			}
+			else board.clearSquare(to);
+		}
+	}
+
+	/**
+	* Passes the turn without moving, for null move pruning.
+	 */
+	public void makeNullMove()
+	{
+		// Grow undo stack if search goes deeper than expected.
+		if (ply == undoVictor.length)
+		{
+			undoVictor = Arrays.copyOf(undoVictor, ply * 2);
+			undoHash = Arrays.copyOf(undoHash, ply * 2);
+		}
+
+		// Switch turn.
+		undoVictor[ply] = victor;
+		undoHash[ply] = hashKey;
+		P0Turn = !P0Turn;
+		hashKey ^= zobrist.sideKey;
+		ply++;
+	}
+
+	/** Takes back a null move which was the last move played on this position. */
+	public void unmakeNullMove()
+	{
+		ply--;
+		P0Turn = !P0Turn;
+		victor = undoVictor[ply];
+		hashKey = undoHash[ply];
+	}
+
+	/**
+	* Constructor for a copy of a search position, without its undo information.
+	* @param other the search position to copy.
+	 */
+	public SearchPosition(SearchPosition other)
+	{
+		board = other.board.copy();
+		hands = new int[][] {other.hands[0].clone(), other.hands[1].clone()};
+		P0Turn = other.P0Turn;
+		victor = other.victor;
+		zobrist = other.zobrist;
+		hashKey = other.hashKey;
+		material = other.material.clone();
+		pieceValues = other.pieceValues;
+		shogiRules = other.shogiRules;
+	}
+
+	/**
+	* Constructor for a search position from a game state.
+	* @param baseState the game state to search from.
+	* @param zobrist the keys to hash the position with.
+	 */
+	public SearchPosition(GameState baseState, Zobrist zobrist)
+	{
+		// Copy the board and game state flags.
+		board = baseState.position.copy();
+		P0Turn = baseState.P0Turn;
+		victor = baseState.victor;
+
+		// Copy pieces in hand by type.
+		hands = new int[][] {baseState.hands[0].clone(), baseState.hands[1].clone()};
+
+		// Hash the position.
+		this.zobrist = zobrist;
+		hashKey = zobrist.hash(this);
+
+		// Sum the value of each camp's pieces on the board and in hand.
+		shogiRules = baseState.shogiRules;
+		pieceValues = shogiRules.getValueTable();
+		for (int square = 0; square < board.squares; square++)
+			if (board.getCamp(square) != 0)
+				material[board.getCamp(square) - 1] += pieceValues[board.getType(square)];
+		for (int camp = 0; camp < 2; camp++)
+			for (int type = 1; type < hands[camp].length; type++)
+				material[camp] += hands[camp][type] * pieceValues[type];
+	}
+}
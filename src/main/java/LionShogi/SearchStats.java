@@ -0,0 +1,152 @@
+package LionShogi;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Class keeping the statistics of a bot's last search, and totals over all its searches.
+ * The bot records them once a search ends, so they can be read from another thread. */
+public class SearchStats implements SearchStatsMBean
+{
+	// Counts and times of the last search.
+	private long nodes;
+	private long leafEvals;
+	private long betaCutoffs;
+	private long firstMoveCutoffs;
+	private long tableHits;
+	private long[] layerTimes = new long[0];
+	private long searchTime;
+
+	// Totals over all searches.
+	private long searches;
+	private long totalNodes;
+	private long totalTime;
+
+	/**
+	* Records the statistics of a search once it ended.
+	* @param bot the bot which searched, holding the counts of the search and its helpers.
+	* @param layerTimes the time each finished layer took from the start, in milliseconds.
+	* @param searchTime the time of the whole search, in milliseconds.
+	 */
+	public synchronized void record(ShogiBot bot, long[] layerTimes, long searchTime)
+	{
+		this.nodes = bot.nodeCount;
+		this.leafEvals = bot.leafEvals;
+		this.betaCutoffs = bot.betaCutoffs;
+		this.firstMoveCutoffs = bot.firstMoveCutoffs;
+		this.tableHits = bot.tableHits;
+		this.layerTimes = layerTimes.clone();
+		this.searchTime = searchTime;
+		searches++;
+		totalNodes += nodes;
+		totalTime += searchTime;
+	}
+
+	/**
+	* Registers the statistics with the platform MBean server, to be watched through JMX.
+	* @param name the name of the bot, unique among registered bots.
+	* @return whether the statistics were registered.
+	 */
+	public boolean register(String name)
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("LionShogi:type=SearchStats,name=" + name));
+			return true;
+		}
+		catch (JMException e)
+		{
+			StartShogi.println("ERROR: Cannot register search statistics: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	* Getter for a line describing the last search.
+	* @return the summary of the last search.
+	 */
+	public synchronized String getSummary()
+	{
+		StringBuilder summary = new StringBuilder("Search: " + nodes + " nodes in " + searchTime
+				+ " ms (" + getNodesPerSecond() + " nodes/s), " + leafEvals + " leaf evaluations, "
+				+ betaCutoffs + " cutoffs (" + Math.round(getFirstMoveCutoffRate() * 100)
+				+ "% first move), " + tableHits + " table hits. Layer times (ms):");
+		for (long layerTime : layerTimes) summary.append(" " + layerTime);
+		return summary.toString();
+	}
+
+	@Override
+	public synchronized long getNodes()
+	{
+		return nodes;
+	}
+
+	@Override
+	public synchronized long getLeafEvals()
+	{
+		return leafEvals;
+	}
+
+	@Override
+	public synchronized long getBetaCutoffs()
+	{
+		return betaCutoffs;
+	}
+
+	@Override
+	public synchronized double getFirstMoveCutoffRate()
+	{
+		if (betaCutoffs == 0) return 0;
+		return (double) firstMoveCutoffs / betaCutoffs;
+	}
+
+	@Override
+	public synchronized long getTableHits()
+	{
+		return tableHits;
+	}
+
+	@Override
+	public synchronized long[] getLayerTimes()
+	{
+		return layerTimes.clone();
+	}
+
+	@Override
+	public synchronized long getSearchTime()
+	{
+		return searchTime;
+	}
+
+	@Override
+	public synchronized long getNodesPerSecond()
+	{
+		return nodes * 1000 / Math.max(1, searchTime);
+	}
+
+	@Override
+	public synchronized long getSearches()
+	{
+		return searches;
+	}
+
+	@Override
+	public synchronized long getTotalNodes()
+	{
+		return totalNodes;
+	}
+
+	@Override
+	public synchronized long getTotalTime()
+	{
+		return totalTime;
+	}
+
+	@Override
+	public synchronized long getTotalNodesPerSecond()
+	{
+		return totalNodes * 1000 / Math.max(1, totalTime);
+	}
+}
@@ -0,0 +1,77 @@
+package LionShogi;
+
+/** Interface of a bot's search statistics, as watched through JMX. */
+public interface SearchStatsMBean
+{
+	/**
+	* Getter for the number of nodes of the last search.
+	* @return the number of nodes.
+	 */
+	public long getNodes();
+
+	/**
+	* Getter for the number of positions of the last search given a value by their reward.
+	* @return the number of leaf evaluations.
+	 */
+	public long getLeafEvals();
+
+	/**
+	* Getter for the number of nodes of the last search cut off by a move.
+	* @return the number of beta cutoffs.
+	 */
+	public long getBetaCutoffs();
+
+	/**
+	* Getter for the share of the cutoffs of the last search made by the first move searched.
+	* @return the first move cutoff rate, between 0 and 1.
+	 */
+	public double getFirstMoveCutoffRate();
+
+	/**
+	* Getter for the number of nodes of the last search found in the transposition table.
+	* @return the number of table hits.
+	 */
+	public long getTableHits();
+
+	/**
+	* Getter for the time the last search took to finish each layer, from its start.
+	* @return the time of each finished layer in milliseconds.
+	 */
+	public long[] getLayerTimes();
+
+	/**
+	* Getter for the time of the last search.
+	* @return the time in milliseconds.
+	 */
+	public long getSearchTime();
+
+	/**
+	* Getter for the speed of the last search.
+	* @return the number of nodes per second.
+	 */
+	public long getNodesPerSecond();
+
+	/**
+	* Getter for the number of searches of the bot.
+	* @return the number of searches.
+	 */
+	public long getSearches();
+
+	/**
+	* Getter for the number of nodes of all searches of the bot.
+	* @return the number of nodes.
+	 */
+	public long getTotalNodes();
+
+	/**
+	* Getter for the time of all searches of the bot.
+	* @return the time in milliseconds.
+	 */
+	public long getTotalTime();
+
+	/**
+	* Getter for the speed of all searches of the bot.
+	* @return the number of nodes per second.
+	 */
+	public long getTotalNodesPerSecond();
+}
@@ -1,6 +1,20 @@
 package LionShogi;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import LionShogi.json.*;
 
@@ -15,6 +29,80 @@ public class ShogiBot implements ShogiSelector
 	int MIN_ALPHA = 0;
 	int MAX_BETA = 10000;
 
+	// Hashing of search positions and table of searched positions.
+	Zobrist zobrist;
+	TranspositionTable transTable;
+	int tableSize = 1 << 20;
+
+	// Search algorithm of each node, and half width of the window around the last score.
+	static final String PVS = "pvs";
+	boolean pvs = false;
+	int aspiration = 0;
+
+	// Selective search: layers skipped by a null move, moves searched before late moves
+	// are reduced, and margin of the gain of a quiet move at the frontier - 0 to disable.
+	private static final int REDUCTION_MIN_LAYER = 3;
+	int nullMove = 0;
+	int reductions = 0;
+	int futilityMargin = 0;
+	private boolean nullMovePlayed;
+
+	// Generator of moves, and move pickers reused by each ply of the search.
+	MoveGenerator moveGenerator;
+	private MovePicker[] plyPickers = new MovePicker[0];
+
+	// Killer moves and history of this bot's search, for ordering moves.
+	MoveOrdering ordering;
+
+	// Time budget of a move, and state of the running search.
+	private static final int TIME_CHECK_NODES = 1024;
+	int moveTime = 0;
+	long deadline;
+	long nodeCount;
+	boolean searchAborted;
+	AtomicBoolean stopFlag = new AtomicBoolean();
+	int completedLayer;
+	int rootScore;
+
+	// Counts of the running search, and statistics of the last searches.
+	long leafEvals;
+	long betaCutoffs;
+	long firstMoveCutoffs;
+	long tableHits;
+	SearchStats stats = new SearchStats();
+
+	// Number of leaves searched, for sampling flight recorder events.
+	private int leafSearches;
+
+	// Threads of the search - splitting the root moves, or searching the same root (SMP).
+	static final String ROOT_SPLIT = "root";
+	static final String LAZY_SMP = "smp";
+	int threads = 1;
+	String parallelMode = ROOT_SPLIT;
+	ForkJoinPool searchPool;
+
+	// Helper bots splitting the root, one per thread, waiting to search a root move - each
+	// keeps its move ordering over the iterations of a search.
+	private ConcurrentLinkedQueue<ShogiBot> rootHelpers = new ConcurrentLinkedQueue<>();
+
+	// Tablebase file of the variant, and its values mapped once the bot first plays from it.
+	String tablebasePath;
+	Tablebase tablebase;
+
+	// Pondering - searching the predicted reply during the opponent's turn, on its own thread.
+	static final String PONDER_ON = "on";
+	boolean ponder = false;
+	private ExecutorService ponderExecutor;
+	private Future<Integer> ponderTask;
+	private long ponderKey;
+
+	// Thread the game's moves are searched on, and whether the player asked for the move now.
+	private ExecutorService searchExecutor;
+	private volatile boolean moveNowRequested;
+
+	// Listener told of each finished layer, or null.
+	SearchListener listener;
+
 	@Override
 	public void onObject(HashMap<String, String> currentObject)
 	{
@@ -24,6 +112,39 @@ public class ShogiBot implements ShogiSelector
 			if (currentObject.containsKey("layers"))
 				if (currentObject.get("layers").matches("[0-9]*?"))
 					baseLayer = Integer.valueOf(currentObject.get("layers"));
+			if (currentObject.containsKey("table_size"))
+				if (currentObject.get("table_size").matches("[0-9]*?"))
+					tableSize = Integer.valueOf(currentObject.get("table_size"));
+			if (currentObject.containsKey("move_time"))
+				if (currentObject.get("move_time").matches("[0-9]*?"))
+					moveTime = Integer.valueOf(currentObject.get("move_time"));
+			if (currentObject.containsKey("search"))
+				pvs = currentObject.get("search").equals(PVS);
+			if (currentObject.containsKey("aspiration"))
+				if (currentObject.get("aspiration").matches("[0-9]*?"))
+					aspiration = Integer.valueOf(currentObject.get("aspiration"));
+			if (currentObject.containsKey("null_move"))
+				if (currentObject.get("null_move").matches("[0-9]*?"))
+					nullMove = Integer.valueOf(currentObject.get("null_move"));
+			if (currentObject.containsKey("reductions"))
+				if (currentObject.get("reductions").matches("[0-9]*?"))
+					reductions = Integer.valueOf(currentObject.get("reductions"));
+			if (currentObject.containsKey("futility"))
+				if (currentObject.get("futility").matches("[0-9]*?"))
+					futilityMargin = Integer.valueOf(currentObject.get("futility"));
+			if (currentObject.containsKey("threads"))
+				if (currentObject.get("threads").matches("[0-9]*?"))
+					threads = Math.max(1, Integer.valueOf(currentObject.get("threads")));
+			if (currentObject.containsKey("parallel"))
+			{
+				String modeStr = currentObject.get("parallel");
+				if (modeStr.equals(ROOT_SPLIT) || modeStr.equals(LAZY_SMP))
+					parallelMode = modeStr;
+			}
+			if (currentObject.containsKey("tablebase"))
+				tablebasePath = currentObject.get("tablebase");
+			if (currentObject.containsKey("ponder"))
+				ponder = currentObject.get("ponder").equals(PONDER_ON);
 		}
 	}
 
@@ -37,83 +158,565 @@ public class ShogiBot implements ShogiSelector
 		// Initialize array list.
 		ArrayList<GameState> gameStateArray = new ArrayList<>();
 
-		// Initialize board dimensions and initialize pointer to board.
-		byte[][][] board = baseState.boardArray;
-		int[] currDims = new int[] {board.length, board[0].length};
-
 		// Get side of the bot.
 		byte botSide = 2;
 		if (baseState.P0Turn) botSide = 1;
 
-		// Get pointer for capture array using side.
-		ArrayList<Byte> captures = baseState.capturesP1;
-		if (botSide == 1) captures = baseState.capturesP0;
+		// Generate board moves, then one drop per type of piece in hand on each empty square,
+		// so that holding several pieces of a type does not repeat the same drops.
+		MoveList moves = new MoveList(64);
+		moveGenerator.generateMoves(baseState.position, botSide, baseState.hands[botSide - 1], moves);
+		for (int i = 0; i < moves.size; i++)
+			gameStateArray.add(ShogiMove.applyTo(baseState, moves.moves[i]));
+
+		// Return array list of all moves
+		return gameStateArray;
+	}
+
+	/**
+	* Getter for an array of all possible moves from a search position.
+	* @param searchPos the position to get the moves of.
+	* @return the array of encoded moves.
+	 */
+	public int[] getAllMoves(SearchPosition searchPos)
+	{
+		MoveList moves = new MoveList(64);
+		moveGenerator.generateMoves(searchPos, moves);
+		return moves.toArray();
+	}
+
+	/**
+	* Getter for this bot's move picker for a ply of the search, made on first use.
+	* @param ply the number of moves played since the root.
+	* @return the move picker to start.
+	 */
+	private MovePicker getMovePicker(int ply)
+	{
+		if (ply >= plyPickers.length) plyPickers = Arrays.copyOf(plyPickers, ply * 2 + 1);
+		if (plyPickers[ply] == null) plyPickers[ply] = new MovePicker(moveGenerator, ordering);
+		return plyPickers[ply];
+	}
+
+	/**
+	* Getter for the hashing keys for a game state's board, made on first use.
+	* @param baseState the game state to hash.
+	* @return the hashing keys.
+	 */
+	public Zobrist getZobrist(GameState baseState)
+	{
+		Position board = baseState.position;
+		if (zobrist == null || zobrist.squares != board.squares
+				|| zobrist.pieceTypes != board.pieceTypes)
+		{
+			zobrist = new Zobrist(board.squares, board.pieceTypes);
+			if (tableSize > 0) transTable = new TranspositionTable(tableSize);
+		}
+		return zobrist;
+	}
+
+	/**
+	* Getter for best state to choose from according to minmax algorithm.
+	* @param baseState the base game state.
+	* @return the chosen game state.
+	 */
+	public GameState chooseBestState (GameState baseState)
+	{
+		BotMoveEvent event = new BotMoveEvent();
+		event.begin();
+		int bestMove = chooseBestMove(baseState);
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.layer = completedLayer;
+			event.nodes = nodeCount;
+			event.score = rootScore;
+			if (bestMove != 0) event.move = ShogiMove.toCommand(baseState, bestMove);
+			event.commit();
+		}
+		if (bestMove == 0) return baseState;
+
+		// Return final game state.
+		return ShogiMove.applyTo(baseState, bestMove);
+	}
+
+	/**
+	* Maps the tablebase file of the variant. Without the file, the bot searches instead.
+	* @param baseState a game state of the variant, for its material.
+	 */
+	private void loadTablebase(GameState baseState)
+	{
+		if (new File(tablebasePath).exists())
+		{
+			tablebase = new Tablebase(shogiRules, baseState);
+			if (!tablebase.load(tablebasePath)) tablebase = null;
+		}
+		tablebasePath = null;
+	}
+
+	/**
+	* Getter for best move to play according to minmax algorithm.
+	* @param baseState the base game state.
+	* @return the chosen encoded move, or 0 if there is no move to play.
+	 */
+	public int chooseBestMove (GameState baseState)
+	{
+		// Play the move found while pondering, if the opponent played the predicted move.
+		int ponderMove = stopPonder(baseState);
+		if (ponderMove != 0) return ponderMove;
+
+		stopFlag.set(moveNowRequested);
+		return searchBestMove(baseState, moveTime);
+	}
+
+	/**
+	* Starts searching the best state to play on the bot's own thread, so that the game can
+	* keep reading input until the move is found.
+	* @param baseState the base game state.
+	* @return the future giving the chosen game state.
+	 */
+	public Future<GameState> startSearch(GameState baseState)
+	{
+		if (searchExecutor == null) searchExecutor = newBotExecutor("search");
+		moveNowRequested = false;
+		return searchExecutor.submit(() -> chooseBestState(baseState));
+	}
+
+	/**
+	* Starts searching the best move to play on the bot's own thread, as startSearch does.
+	* @param baseState the base game state.
+	* @return the future giving the chosen encoded move, or 0 if there is no move to play.
+	 */
+	public Future<Integer> startMoveSearch(GameState baseState)
+	{
+		if (searchExecutor == null) searchExecutor = newBotExecutor("search");
+		moveNowRequested = false;
+		return searchExecutor.submit(() -> chooseBestMove(baseState));
+	}
+
+	/**
+	* Stops the running search, which plays the best move of the last layer it finished - or
+	* of its first layer, if none is finished yet.
+	 */
+	public void moveNow()
+	{
+		moveNowRequested = true;
+		stopFlag.set(true);
+	}
+
+	/**
+	* Getter for an executor running the bot's tasks one at a time on its own thread, which
+	* does not keep the program running once the game ends.
+	* @param name the name of the thread.
+	* @return the executor.
+	 */
+	private static ExecutorService newBotExecutor(String name)
+	{
+		return Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	* Starts searching the position after the opponent's predicted reply on another thread,
+	* while the opponent thinks. The reply predicted is the best move the table holds for
+	* the position, from the search of the bot's last move.
+	* @param baseState the game state after the bot's move, with the opponent to play.
+	 */
+	public void startPonder(GameState baseState)
+	{
+		if (!ponder || transTable == null || baseState.victor != 0) return;
+
+		// Find the predicted reply, if the table still holds the position.
+		SearchPosition searchPos = new SearchPosition(baseState, getZobrist(baseState));
+		int predictedMove = TranspositionTable.getMove(transTable.probe(searchPos.hashKey));
+		if (predictedMove == 0 || !moveGenerator.isPseudoLegal(searchPos, predictedMove)) return;
+		searchPos.makeMove(predictedMove);
+		ponderKey = searchPos.hashKey;
+		GameState ponderState = ShogiMove.applyTo(baseState, predictedMove);
+		if (ponderState.victor != 0) return;
+
+		// Search it to the base layer without a time budget, until stopped.
+		if (ponderExecutor == null) ponderExecutor = newBotExecutor("ponder");
+		stopFlag.set(false);
+		ponderTask = ponderExecutor.submit(() -> searchBestMove(ponderState, 0));
+	}
 
-		// Loop get a game state for all pieces of same side as in game state's round.
-		for (byte y = 0; y < currDims[0]; y++)
+	/**
+	* Stops pondering once the opponent played. If the opponent played the predicted reply,
+	* the search goes on for the bot's time budget, else it is stopped at once. Either way,
+	* the positions it searched stay in the table.
+	* @param baseState the game state after the opponent's move.
+	* @return the move found while pondering if the reply was predicted, else 0.
+	 */
+	private int stopPonder(GameState baseState)
+	{
+		if (ponderTask == null) return 0;
+		boolean hit = new SearchPosition(baseState, getZobrist(baseState)).hashKey == ponderKey;
+		try
 		{
-			for (byte x = 0; x < currDims[1]; x++)
+			// Wait for the search to end, giving it the time budget of a move if it was a hit.
+			if (hit && moveTime > 0)
 			{
-				// Get list of found piece's all possible moves.
-				if (board[y][x][1] == botSide)
+				try
 				{
-					// Get array of possible moves
-					byte[][] possMvs = 
-						mainHandler.getPossibleMoves(new byte[] {y,x}, baseState);
-
-					// Loop through all possible moves
-					for (byte y_1 = 0; y_1 < currDims[0]; y_1++)
-						for (byte x_1 = 0; x_1 < currDims[1]; x_1++)
-							// Add move to array list when found.
-							if (possMvs[y_1][x_1] != 0)
-								gameStateArray.add(baseState.playMove(
-									new byte[] {y, x},
-									new byte[] {y_1, x_1}));
+					return ponderTask.get(moveTime, TimeUnit.MILLISECONDS);
 				}
-
-				// Get a move for all captures in that empty space.
-				else if (board[y][x][1] == 0)
+				catch (TimeoutException e)
 				{
-					for (byte i = 0; i < captures.size(); i++)
-						gameStateArray.add(baseState.placeCapture(
-									i, new byte[] {y, x}));
+					stopFlag.set(true);
 				}
 			}
+			else if (!hit) stopFlag.set(true);
+			int move = ponderTask.get();
+			if (hit) return move;
+			else return 0;
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			StartShogi.println("ERROR: Pondering failed: " + e.getMessage());
+			return 0;
+		}
+		finally
+		{
+			ponderTask = null;
 		}
-
-		// Return array list of all moves
-		return gameStateArray;
 	}
 
 	/**
-	* Getter for best state to choose from according to minmax algorithm.
+	* Searches the best move to play, one layer deeper at a time, until the base layer, the
+	* time budget or the stop flag.
 	* @param baseState the base game state.
-	* @return the chosen game state.
+	* @param timeBudget the time the search can take in milliseconds, or 0 for no limit.
+	* @return the chosen encoded move, or 0 if there is no move to play.
 	 */
-	public GameState chooseBestState (GameState baseState)
+	private int searchBestMove(GameState baseState, int timeBudget)
 	{
-		// Initialize children game states
+		// Reset the counts of the search.
+		long startTime = System.currentTimeMillis();
+		nodeCount = 0;
+		leafEvals = 0;
+		betaCutoffs = 0;
+		firstMoveCutoffs = 0;
+		tableHits = 0;
+		completedLayer = -1;
+
+		// Play the tablebase's move at once if it has the position.
+		if (tablebasePath != null) loadTablebase(baseState);
+		if (tablebase != null)
+		{
+			int tableMove = tablebase.getBestMove(baseState, moveGenerator);
+			if (tableMove != 0)
+			{
+				stats.record(this, new long[0], System.currentTimeMillis() - startTime);
+				return tableMove;
+			}
+		}
+
+		// Scores in the table are for the bot's side - drop them if the side changed.
+		if (transTable != null && side != baseState.getTurnByte())
+			transTable.clear();
+
+		// Initialize search position and root moves.
 		side = baseState.getTurnByte();
-		ArrayList<GameState> childrenStates = getAllGameStates(baseState);
-		if (childrenStates == null)
+		SearchPosition searchPos = new SearchPosition(baseState, getZobrist(baseState));
+		int[] rootMoves = getAllMoves(searchPos);
+		if (rootMoves.length == 0)
+		{
 			StartShogi.println("Uh Oh");
-		GameState retState = null;
-		int maxVal = MIN_ALPHA;
+			return 0;
+		}
+
+		// Order root moves by captures - history is empty before the search.
+		ordering.clear(searchPos.board);
+		for (ShogiBot helper : rootHelpers) helper.ordering.clear(searchPos.board);
+		ordering.orderMoves(searchPos, rootMoves, rootMoves.length, 0, 0);
+		int bestMove = rootMoves[0];
+
+		// Start the clock - no time budget means searching up to the base layer.
+		long[] layerTimes = new long[baseLayer + 1];
+		searchAborted = false;
+		if (timeBudget > 0) deadline = System.currentTimeMillis() + timeBudget;
+		else deadline = Long.MAX_VALUE;
+
+		// Start helper threads searching the same root, if in SMP mode.
+		ArrayList<ForkJoinTask<ShogiBot>> helpers = new ArrayList<>();
+		if (threads > 1 && parallelMode.equals(LAZY_SMP))
+			helpers = startSmpHelpers(searchPos, rootMoves);
+
+		// Search one layer deeper each iteration, until the base layer or the deadline.
+		for (int layer = 0; layer <= baseLayer; layer++)
+		{
+			SearchIterationEvent event = new SearchIterationEvent();
+			event.begin();
+			int iterMove;
+			if (aspiration > 0 && completedLayer >= 0)
+			{
+				// Search a window around the last score first.
+				int low = Math.max(MIN_ALPHA, rootScore - aspiration);
+				int high = Math.min(MAX_BETA, rootScore + aspiration);
+				iterMove = searchRoot(searchPos, rootMoves, layer, low, high);
+
+				// Search again with the full window if the score fell outside of it.
+				if (!searchAborted && ((rootScore <= low && low > MIN_ALPHA)
+							|| (rootScore >= high && high < MAX_BETA)))
+					iterMove = searchRoot(searchPos, rootMoves, layer, MIN_ALPHA, MAX_BETA);
+			}
+			else iterMove = searchRoot(searchPos, rootMoves, layer, MIN_ALPHA, MAX_BETA);
+			event.end();
+			if (event.shouldCommit())
+			{
+				event.layer = layer;
+				event.nodes = nodeCount;
+				event.score = rootScore;
+				event.move = ShogiMove.toCommand(baseState, iterMove);
+				event.aborted = searchAborted;
+				event.commit();
+			}
+			if (searchAborted) break; // Iteration is incomplete - keep the previous move.
+			bestMove = iterMove;
+			completedLayer = layer;
+			layerTimes[layer] = System.currentTimeMillis() - startTime;
+			if (listener != null)
+				listener.onLayer(layer, rootScore - getReward(searchPos), nodeCount,
+						layerTimes[layer], bestMove);
+
+			// Search the best move first on the next iteration.
+			int bestIndex = 0;
+			while (rootMoves[bestIndex] != bestMove) bestIndex++;
+			System.arraycopy(rootMoves, 0, rootMoves, 1, bestIndex);
+			rootMoves[0] = bestMove;
+			if (System.currentTimeMillis() >= deadline) break;
+		}
+
+		// Stop helper threads before the next search can reset the stop flag.
+		stopFlag.set(true);
+		for (ForkJoinTask<ShogiBot> helper : helpers) addCounts(helper.join());
+		stats.record(this, Arrays.copyOf(layerTimes, completedLayer + 1),
+				System.currentTimeMillis() - startTime);
+
+		// Return the move of the last complete iteration.
+		return bestMove;
+	}
+
+	/**
+	* Searches all root moves to a layer and gets the best of them.
+	* @param searchPos the root search position.
+	* @param rootMoves the moves of the root position, in the order to search them.
+	* @param layer the depth layer to search the children of the root to.
+	* @param alpha the lowest score looked for - a lower best score is only an upper bound.
+	* @param beta the highest score looked for - the search stops at a higher score.
+	* @return the best move, with its value kept in rootScore.
+	 */
+	public int searchRoot(SearchPosition searchPos, int[] rootMoves, int layer, int alpha, int beta)
+	{
+		if (threads > 1 && parallelMode.equals(ROOT_SPLIT) && rootMoves.length > 1)
+			return searchRootParallel(searchPos, rootMoves, layer, alpha, beta);
+
+		int bestMove = rootMoves[0];
+		int maxVal = alpha;
 
-		// Loop through all child states to get highest value.
-		for (GameState childState : childrenStates)
+		// Loop through all moves to get highest value - the opponent plays next.
+		for (int i = 0; i < rootMoves.length; i++)
 		{
-			int newVal = alphabeta(childState, MIN_ALPHA, MAX_BETA, baseLayer, true);
-			// If current value higher than first value, switch to maximal game state.
+			int move = rootMoves[i];
+			searchPos.makeMove(move);
+			int newVal = searchChild(searchPos, maxVal, beta, layer, true, i == 0, 0);
+			searchPos.unmakeMove(move);
+			if (searchAborted) break;
+
+			// If current value higher than first value, switch to maximal move.
 			if (newVal > maxVal)
 			{
-				retState = childState;
+				bestMove = move;
 				maxVal = newVal;
 			}
+			if (maxVal >= beta) break;
 		}
 
-		// Return final game state.
-		return retState;
+		// Return the best move.
+		rootScore = maxVal;
+		return bestMove;
+	}
+
+	/**
+	* Searches the root moves to a layer on a pool of threads, and gets the best of them.
+	* The first move is searched alone to get a good alpha bound, then the others are
+	* split between threads sharing the best score found so far and the index of its move.
+	* A move before that index in root order searches with an alpha one below the score,
+	* so that a tie gets its exact value and the first best move is chosen, the same as
+	* with a serial search. Once the best score reaches beta, the moves left are skipped.
+	* @param searchPos the root search position.
+	* @param rootMoves the moves of the root position, in the order to search them.
+	* @param layer the depth layer to search the children of the root to.
+	* @param alpha the lowest score looked for - a lower best score is only an upper bound.
+	* @param beta the highest score looked for - the search stops at a higher score.
+	* @return the best move, with its value kept in rootScore.
+	 */
+	public int searchRootParallel(SearchPosition searchPos, int[] rootMoves, int layer,
+			int alpha, int beta)
+	{
+		if (searchPool == null) searchPool = new ForkJoinPool(threads);
+
+		// Search first move on this thread.
+		int[] values = new int[rootMoves.length];
+		boolean[] exact = new boolean[rootMoves.length];
+		searchPos.makeMove(rootMoves[0]);
+		values[0] = alphabeta(searchPos, alpha, beta, layer, false);
+		searchPos.unmakeMove(rootMoves[0]);
+		if (searchAborted) return rootMoves[0];
+		exact[0] = values[0] > alpha;
+		AtomicLong sharedBest = new AtomicLong((long) Math.max(alpha, values[0]) << 32);
+
+		// Split the other moves between threads, each with a helper bot and its own position.
+		RecursiveAction[] tasks = new RecursiveAction[rootMoves.length - 1];
+		for (int i = 1; i < rootMoves.length; i++)
+		{
+			final int index = i;
+			tasks[i - 1] = new RecursiveAction()
+			{
+				@Override
+				protected void compute()
+				{
+					// Get alpha from the best move so far, skipping the move after a cutoff.
+					long best = sharedBest.get();
+					int moveAlpha = (int) (best >> 32);
+					if (moveAlpha >= beta) return;
+					if ((int) best > index) moveAlpha--;
+
+					// Search the move with a waiting helper, made if all are busy.
+					ShogiBot helper = rootHelpers.poll();
+					if (helper == null) helper = new ShogiBot(ShogiBot.this);
+					else helper.copySearchState(ShogiBot.this);
+					SearchPosition helperPos = new SearchPosition(searchPos);
+					helperPos.makeMove(rootMoves[index]);
+					values[index] = helper.alphabeta(helperPos, moveAlpha, beta, layer, false);
+
+					// Share the value if it is exact and better than the best so far.
+					exact[index] = values[index] > moveAlpha && !helper.searchAborted;
+					long result = ((long) values[index] << 32) | index;
+					if (exact[index])
+						sharedBest.accumulateAndGet(result, (a, b) ->
+							(a >> 32) > (b >> 32) || ((a >> 32) == (b >> 32) && (int) a < (int) b)
+								? a : b);
+					synchronized (ShogiBot.this)
+					{
+						addCounts(helper);
+						searchAborted |= helper.searchAborted;
+					}
+					rootHelpers.add(helper);
+				}
+			};
+		}
+		searchPool.invoke(new RecursiveAction()
+		{
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
+		if (searchAborted) return rootMoves[0];
+
+		// Get the first move with the highest exact value.
+		int bestMove = rootMoves[0];
+		int maxVal = alpha;
+		for (int i = 0; i < rootMoves.length; i++)
+			if (exact[i] && values[i] > maxVal)
+			{
+				bestMove = rootMoves[i];
+				maxVal = values[i];
+			}
+
+		// Return the best move.
+		rootScore = maxVal;
+		return bestMove;
+	}
+
+	/**
+	* Starts helper threads for a lazy SMP search: each searches the whole root with
+	* iterative deepening on its own position until the search is stopped. Helpers start
+	* at different layers and root move orders, and only share their work through the
+	* transposition table, which orders and cuts off the main thread's search.
+	* @param searchPos the root search position.
+	* @param rootMoves the moves of the root position.
+	* @return the tasks of the helpers, giving the helper bots once the search is stopped.
+	 */
+	public ArrayList<ForkJoinTask<ShogiBot>> startSmpHelpers(SearchPosition searchPos, int[] rootMoves)
+	{
+		if (searchPool == null) searchPool = new ForkJoinPool(threads);
+		ArrayList<ForkJoinTask<ShogiBot>> helpers = new ArrayList<>();
+		for (int i = 0; i < threads - 1; i++)
+		{
+			// Copy the position and rotate root moves for each helper.
+			final int helperId = i + 1;
+			final SearchPosition helperPos = new SearchPosition(searchPos);
+			final int[] helperMoves = new int[rootMoves.length];
+			for (int j = 0; j < rootMoves.length; j++)
+				helperMoves[j] = rootMoves[(j + helperId) % rootMoves.length];
+
+			helpers.add(searchPool.submit(() ->
+			{
+				ShogiBot helper = new ShogiBot(this);
+				helper.completedLayer = 0; // Helpers can be stopped at any time.
+
+				// Search one layer deeper each iteration, every other helper one layer ahead.
+				for (int layer = helperId % 2; layer <= baseLayer + 1; layer++)
+				{
+					helper.searchRoot(helperPos, helperMoves, layer, MIN_ALPHA, MAX_BETA);
+					if (helper.searchAborted) break;
+				}
+				return helper;
+			}));
+		}
+		return helpers;
+	}
+
+	/**
+	* Adds the counts of a helper's search to this bot's.
+	* @param helper the helper bot, done searching.
+	 */
+	private void addCounts(ShogiBot helper)
+	{
+		nodeCount += helper.nodeCount;
+		leafEvals += helper.leafEvals;
+		betaCutoffs += helper.betaCutoffs;
+		firstMoveCutoffs += helper.firstMoveCutoffs;
+		tableHits += helper.tableHits;
+	}
+
+	/**
+	* Checks if the king of the side to move is attacked by an enemy piece.
+	* @param searchPos the position to look at.
+	* @return whether the side to move is in check.
+	 */
+	public boolean isInCheck(SearchPosition searchPos)
+	{
+		// Find the king of the side to move.
+		Position board = searchPos.board;
+		byte turn = searchPos.getTurnByte();
+		int king = board.nextSquare(board.pieceBoards, board.getBoardOffset((byte) 1, turn), 0);
+		if (king == -1) return false;
+
+		// Look for an enemy piece which can move to the king.
+		return moveGenerator.isAttacked(board, king, (byte) (3 - turn));
+	}
+
+	/**
+	* Checks every few nodes if the search ran out of time or was stopped, and aborts it
+	* if it did. The first iteration is never aborted, so that there is always a move to play.
+	* @return whether the search has been aborted.
+	 */
+	private boolean checkTime()
+	{
+		if (++nodeCount % TIME_CHECK_NODES == 0 && completedLayer >= 0)
+		{
+			if (System.currentTimeMillis() >= deadline) stopFlag.set(true);
+			searchAborted = stopFlag.get();
+		}
+		return searchAborted;
 	}
 
 	/**
@@ -125,78 +728,403 @@ public class ShogiBot implements ShogiSelector
 	{
 		int reward = 0;
 
-		// Loop add to reward each piece's value
-		byte[][][] board = rewardState.boardArray;
-		for (int y = 0; y < board.length; y++)
-			for (int x = 0; x < board[0].length; x++)
-				// Current case is a piece bot owns
-				if (board[y][x][1] == side) 
-					reward += shogiRules.getValue(board[y][x][0]);
+		// Loop add to reward each piece's value, for pieces the bot owns.
+		Position board = rewardState.position;
+		int campOffset = board.getCampOffset(side);
+		for (int square = board.nextSquare(board.campBoards, campOffset, 0); square != -1;
+				square = board.nextSquare(board.campBoards, campOffset, square + 1))
+			reward += shogiRules.getValue(board.getType(square));
 
-		// Loop reward for each capture
-		ArrayList<Byte> captures = rewardState.capturesP1;
-		if (side == 1) captures = rewardState.capturesP0;
-		for (Byte piece: captures)
-			reward += shogiRules.getValue(piece);
+		// Loop reward for each piece in hand, by type.
+		int[] hand = rewardState.hands[side - 1];
+		for (byte piece = 1; piece < hand.length; piece++)
+			if (hand[piece] > 0) reward += hand[piece] * shogiRules.getValue(piece);
 
 		// Return the final reward.
 		return reward;
 	}
 
 	/**
-	* Getter for minmax value of a state.
-	* @param nodeState the game state to develop and give a value to.
+	* Get a quantification of how good this search position is for the bot, from the
+	* running totals the position keeps up to date on each move.
+	* @param searchPos the search position to link to.
+	* @return the quantification as an integer.
+	 */
+	public int getReward(SearchPosition searchPos)
+	{
+		return searchPos.material[side - 1];
+	}
+
+	/**
+	* Getter for minmax value of a position, searched by making and unmaking moves on it.
+	* @param nodeState the search position to develop and give a value to.
 	* @param alpha the lowest score the maximizing player
 	* @param beta the highest score of the minimizing player
 	* @param layer the depth layer of the algorithm.
 	* @param maxPlayer whether current player is maximizing player or not.
 	* @return the value of the algorithm.
 	 */
-	public int alphabeta(GameState nodeState, int alpha, int beta, int layer, boolean maxPlayer)
+	public int alphabeta(SearchPosition nodeState, int alpha, int beta, int layer, boolean maxPlayer)
 	{
-		// If layer is 0, return the reward.
-		if (layer == 0)
+		// If out of time, the result is not used.
+		boolean afterNull = nullMovePlayed;
+		nullMovePlayed = false;
+		if (checkTime()) return 0;
+
+		// If the game is over, return the reward - at layer 0, settle captures first.
+		if (nodeState.victor != 0)
+		{
+			leafEvals++;
 			return getReward(nodeState);
+		}
+		else if (layer == 0)
+			return searchLeaf(nodeState, alpha, beta, maxPlayer);
 		// Perform the pruning.
 		else
 		{
-			// Initialize return variable.
+			// Initialize return variable and bounds the search started with.
 			int value = 0;
+			int alphaOrig = alpha, betaOrig = beta;
+
+			// Look up the position in the table - its stored score may be enough.
+			int hashMove = 0;
+			if (transTable != null)
+			{
+				long entry = transTable.probe(nodeState.hashKey);
+				int bound = TranspositionTable.getBound(entry);
+				if (bound != 0)
+				{
+					tableHits++;
+					hashMove = TranspositionTable.getMove(entry);
+					int score = TranspositionTable.getScore(entry);
+					if (TranspositionTable.getDepth(entry) >= layer)
+					{
+						if (bound == TranspositionTable.BOUND_EXACT) return score;
+						else if (bound == TranspositionTable.BOUND_LOWER)
+							alpha = Math.max(alpha, score);
+						else beta = Math.min(beta, score);
+						if (alpha >= beta) return score;
+					}
+				}
+			}
+
+			// Get reward and check for selective search - a side in check is never pruned.
+			boolean selective = nullMove > 0 || reductions > 0 || futilityMargin > 0;
+			boolean inCheck = selective && isInCheck(nodeState);
+			int staticEval = 0;
+			if (selective && !inCheck) staticEval = getReward(nodeState);
+
+			// Null move pruning: if passing the turn still gets past the bound, a move would too.
+			if (nullMove > 0 && !afterNull && !inCheck && layer > nullMove
+					&& ((maxPlayer && staticEval >= beta) || (!maxPlayer && staticEval <= alpha)))
+			{
+				nodeState.makeNullMove();
+				nullMovePlayed = true;
+				int nullVal;
+				if (maxPlayer) nullVal = alphabeta(nodeState, beta - 1, beta, layer - 1 - nullMove, false);
+				else nullVal = alphabeta(nodeState, alpha, alpha + 1, layer - 1 - nullMove, true);
+				nullMovePlayed = false;
+				nodeState.unmakeNullMove();
+				if (searchAborted) return 0;
+				if ((maxPlayer && nullVal >= beta) || (!maxPlayer && nullVal <= alpha)) return nullVal;
+			}
+
+			// Futility pruning: at the frontier, quiet moves can only gain a promotion.
+			boolean frontier = futilityMargin > 0 && layer == 1 && !inCheck;
+			boolean pruned = false;
 
-			// Get all child game states.
-			ArrayList<GameState> childrenStates = getAllGameStates(nodeState);
+			// Pick moves to child positions one stage at a time, the most promising first.
+			MovePicker picker = getMovePicker(nodeState.getPly());
+			picker.init(nodeState, hashMove, nodeState.getPly(), false);
+			int bestMove = 0;
 
 			// Player wants to maximise value - cut off at alpha >= beta.
 			if (maxPlayer)
 			{
 				value = MIN_ALPHA; // set value at lowest possible reward
-				for (GameState childState : childrenStates)
+				int i = 0;
+				for (int move = picker.nextMove(); move != 0; move = picker.nextMove(), i++)
 				{
-					value = Math.max(value, alphabeta(childState, alpha, beta,
-								layer - 1, !maxPlayer));
+					boolean quiet = move != hashMove && !ShogiMove.isCapture(move);
+					if (quiet && frontier && staticEval + futilityMargin <= alpha)
+					{
+						pruned = true;
+						continue;
+					}
+
+					nodeState.makeMove(move);
+					int childVal = searchChild(nodeState, alpha, beta, layer - 1, maxPlayer,
+							bestMove == 0, getReduction(i, layer, quiet, inCheck));
+					nodeState.unmakeMove(move);
+					if (searchAborted) return 0;
+					if (childVal > value || bestMove == 0)
+					{
+						value = childVal;
+						bestMove = move;
+					}
 					alpha = Math.max(alpha, value);
-					if (alpha >= beta) break;
+					if (alpha >= beta)
+					{
+						countCutoff(i);
+						ordering.recordCutoff(nodeState, move, nodeState.getPly(), layer);
+						break;
+					}
 				}
 			}
 			// Enemy wants to minimize bot's value - cut off at alpha >= beta
 			else
 			{
 				value = MAX_BETA; // Set value at unreachably high reward.
-				for (GameState childState : childrenStates)
+				int i = 0;
+				for (int move = picker.nextMove(); move != 0; move = picker.nextMove(), i++)
 				{
-					value = Math.min(value, alphabeta(childState, alpha, beta,
-								layer - 1, !maxPlayer));
+					boolean quiet = move != hashMove && !ShogiMove.isCapture(move);
+					if (quiet && frontier && staticEval - futilityMargin >= beta)
+					{
+						pruned = true;
+						continue;
+					}
+
+					nodeState.makeMove(move);
+					int childVal = searchChild(nodeState, alpha, beta, layer - 1, maxPlayer,
+							bestMove == 0, getReduction(i, layer, quiet, inCheck));
+					nodeState.unmakeMove(move);
+					if (searchAborted) return 0;
+					if (childVal < value || bestMove == 0)
+					{
+						value = childVal;
+						bestMove = move;
+					}
 					beta = Math.min(beta, value);
 
-					if (alpha >= beta) break;
+					if (alpha >= beta)
+					{
+						countCutoff(i);
+						ordering.recordCutoff(nodeState, move, nodeState.getPly(), layer);
+						break;
+					}
 				}
 			}
 
+			// Pruned moves could be worth up to the margin past the reward.
+			if (pruned && maxPlayer && (bestMove == 0 || value < staticEval + futilityMargin))
+				value = staticEval + futilityMargin;
+			else if (pruned && !maxPlayer && (bestMove == 0 || value > staticEval - futilityMargin))
+				value = staticEval - futilityMargin;
+
+			// Store the result with the kind of bound it is.
+			if (transTable != null)
+			{
+				int bound = TranspositionTable.BOUND_EXACT;
+				if (value <= alphaOrig) bound = TranspositionTable.BOUND_UPPER;
+				else if (value >= betaOrig) bound = TranspositionTable.BOUND_LOWER;
+				transTable.store(nodeState.hashKey, layer, bound, value, bestMove);
+			}
+
 			// Return value
 			return value;
 		}
 	}
 
+	/**
+	* Getter for the value of a leaf of the search, through its quiescence search, recording
+	* one leaf in a sample with a flight recorder event.
+	* @param nodeState the search position to give a value to.
+	* @param alpha the lowest score the maximizing player
+	* @param beta the highest score of the minimizing player
+	* @param maxPlayer whether current player is maximizing player or not.
+	* @return the value of the position.
+	 */
+	private int searchLeaf(SearchPosition nodeState, int alpha, int beta, boolean maxPlayer)
+	{
+		if (++leafSearches % LeafEvaluationEvent.SAMPLE_RATE != 0)
+			return quiesce(nodeState, alpha, beta, maxPlayer);
+
+		// Time the quiescence search and count its nodes.
+		LeafEvaluationEvent event = new LeafEvaluationEvent();
+		long startNodes = nodeCount;
+		event.begin();
+		int value = quiesce(nodeState, alpha, beta, maxPlayer);
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.nodes = nodeCount - startNodes;
+			event.score = value;
+			event.ply = nodeState.getPly();
+			event.commit();
+		}
+		return value;
+	}
+
+	/**
+	* Getter for the minmax value of a child position, after its move is made.
+	* With principal variation search, moves after the first are expected to be worse than
+	* the best move so far: a null window around the bound proves it cheaply, and only the
+	* moves which fail to be proven worse are searched again with the full window.
+	* @param nodeState the child search position.
+	* @param alpha the lowest score the maximizing player
+	* @param beta the highest score of the minimizing player
+	* @param layer the depth layer of the child.
+	* @param maxPlayer whether the player who made the move is maximizing player or not.
+	* @param firstMove whether the move is the first searched from its parent.
+	* @param reduction the number of layers to reduce the null window search by.
+	* @return the value of the child.
+	 */
+	private int searchChild(SearchPosition nodeState, int alpha, int beta, int layer,
+			boolean maxPlayer, boolean firstMove, int reduction)
+	{
+		if (firstMove || (!pvs && reduction == 0))
+			return alphabeta(nodeState, alpha, beta, layer, !maxPlayer);
+
+		// Search with a null window at the bound of the player who made the move.
+		int childVal;
+		if (maxPlayer)
+		{
+			childVal = alphabeta(nodeState, alpha, alpha + 1, layer - reduction, false);
+			if (childVal <= alpha) return childVal;
+		}
+		else
+		{
+			childVal = alphabeta(nodeState, beta - 1, beta, layer - reduction, true);
+			if (childVal >= beta) return childVal;
+		}
+		if (searchAborted) return childVal;
+
+		// A reduced move which is not proven worse gets searched to its full layer.
+		if (reduction > 0) return searchChild(nodeState, alpha, beta, layer, maxPlayer, false, 0);
+
+		// Search again with the full window, unless the value is already out of it.
+		if (childVal <= alpha || childVal >= beta) return childVal;
+		return alphabeta(nodeState, alpha, beta, layer, !maxPlayer);
+	}
+
+	/**
+	* Counts a beta cutoff, and whether the move which made it was the first searched.
+	* @param moveIndex the index of the move in search order.
+	 */
+	private void countCutoff(int moveIndex)
+	{
+		betaCutoffs++;
+		if (moveIndex == 0) firstMoveCutoffs++;
+	}
+
+	/**
+	* Getter for the number of layers to reduce a move's search by: late quiet moves are
+	* unlikely to be best after move ordering, so they are searched one layer less first.
+	* @param moveIndex the index of the move in search order.
+	* @param layer the depth layer of the parent.
+	* @param quiet whether the move is not a capture nor the stored best move.
+	* @param inCheck whether the side to move is in check.
+	* @return the number of layers to reduce by.
+	 */
+	private int getReduction(int moveIndex, int layer, boolean quiet, boolean inCheck)
+	{
+		if (reductions > 0 && moveIndex >= reductions && layer >= REDUCTION_MIN_LAYER
+				&& quiet && !inCheck)
+			return 1;
+		else return 0;
+	}
+
+	/**
+	* Getter for the value of a position once its captures are played out, so that the
+	* search does not stop in the middle of an exchange. The side to move can stand pat
+	* with the position's reward instead of capturing.
+	* @param nodeState the search position to give a value to.
+	* @param alpha the lowest score the maximizing player
+	* @param beta the highest score of the minimizing player
+	* @param maxPlayer whether current player is maximizing player or not.
+	* @return the value of the position.
+	 */
+	public int quiesce(SearchPosition nodeState, int alpha, int beta, boolean maxPlayer)
+	{
+		// If out of time, the result is not used.
+		if (checkTime()) return 0;
+
+		// Stand pat - the side to move does not have to capture.
+		leafEvals++;
+		int value = getReward(nodeState);
+		if (nodeState.victor != 0) return value;
+		if (maxPlayer)
+		{
+			if (value >= beta) return value;
+			alpha = Math.max(alpha, value);
+		}
+		else
+		{
+			if (value <= alpha) return value;
+			beta = Math.min(beta, value);
+		}
+
+		// Search captures, most valuable victims first.
+		MovePicker picker = getMovePicker(nodeState.getPly());
+		picker.init(nodeState, 0, nodeState.getPly(), true);
+		for (int move = picker.nextMove(); move != 0; move = picker.nextMove())
+		{
+			nodeState.makeMove(move);
+			int childVal = quiesce(nodeState, alpha, beta, !maxPlayer);
+			nodeState.unmakeMove(move);
+			if (searchAborted) return 0;
+
+			// Keep the best value and cut off at alpha >= beta.
+			if (maxPlayer)
+			{
+				value = Math.max(value, childVal);
+				alpha = Math.max(alpha, value);
+			}
+			else
+			{
+				value = Math.min(value, childVal);
+				beta = Math.min(beta, value);
+			}
+			if (alpha >= beta) break;
+		}
+
+		// Return value
+		return value;
+	}
+
+	/**
+	* Constructor for a helper bot searching on another thread for a main bot.
+	* It shares the main bot's properties, table and stop flag.
+	* @param mainBot the bot to help.
+	 */
+	public ShogiBot (ShogiBot mainBot)
+	{
+		this.mainHandler = mainBot.mainHandler;
+		this.shogiRules = mainBot.shogiRules;
+		this.ordering = new MoveOrdering(shogiRules);
+		this.moveGenerator = mainBot.moveGenerator;
+		copySearchState(mainBot);
+	}
+
+	/**
+	* Sets a helper bot up for the main bot's running search, with its properties, table
+	* and stop flag, and with its own counts reset.
+	* @param mainBot the bot to help.
+	 */
+	private void copySearchState(ShogiBot mainBot)
+	{
+		this.side = mainBot.side;
+		this.baseLayer = mainBot.baseLayer;
+		this.zobrist = mainBot.zobrist;
+		this.transTable = mainBot.transTable;
+		this.tableSize = mainBot.tableSize;
+		this.moveTime = mainBot.moveTime;
+		this.deadline = mainBot.deadline;
+		this.stopFlag = mainBot.stopFlag;
+		this.completedLayer = mainBot.completedLayer;
+		this.pvs = mainBot.pvs;
+		this.nullMove = mainBot.nullMove;
+		this.reductions = mainBot.reductions;
+		this.futilityMargin = mainBot.futilityMargin;
+		this.searchAborted = false;
+		this.nodeCount = 0;
+		this.leafEvals = 0;
+		this.betaCutoffs = 0;
+		this.firstMoveCutoffs = 0;
+		this.tableHits = 0;
+	}
+
 	/**
 	* Constructor for shogi boat.
 	* @param mainHandler the main logic handler.
@@ -204,7 +1132,9 @@ public class ShogiBot implements ShogiSelector
 	public ShogiBot (LogicHandler mainHandler)
 	{
 		this.mainHandler = mainHandler;
-		this.shogiRules = LogicHandler.shogiRules;
+		this.shogiRules = mainHandler.shogiRules;
+		this.ordering = new MoveOrdering(shogiRules);
+		this.moveGenerator = mainHandler.moveGenerator;
 	}
 
 
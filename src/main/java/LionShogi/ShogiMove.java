@@ -0,0 +1,179 @@
+package LionShogi;
+
+/** Class for moves encoded as integers: destination, origin, moving piece, captured piece,
+ * and whether the move promotes or is a drop. Every move has a piece, so no move is 0. */
+public class ShogiMove
+{
+	// Bit layout of an encoded move.
+	private static final int SQUARE_MASK = 0xFF;
+	private static final int TYPE_MASK = 0x3F;
+	private static final int FROM_SHIFT = 8;
+	private static final int PIECE_SHIFT = 16;
+	private static final int CAPTURED_SHIFT = 22;
+	private static final int PROMOTION_FLAG = 1 << 28;
+	private static final int DROP_FLAG = 1 << 29;
+
+	/**
+	* Getter for a move of a piece on the board.
+	* @param from the square the piece moves from.
+	* @param to the square the piece moves to.
+	* @param piece the type of the moving piece.
+	* @param captured the type of the piece on the destination, 0 if it is empty.
+	* @param promotes whether the piece promotes on the destination.
+	* @return the encoded move.
+	 */
+	public static int boardMove(int from, int to, byte piece, byte captured, boolean promotes)
+	{
+		int move = to | (from << FROM_SHIFT) | (piece << PIECE_SHIFT) | (captured << CAPTURED_SHIFT);
+		if (promotes) move |= PROMOTION_FLAG;
+		return move;
+	}
+
+	/**
+	* Getter for a drop of a captured piece on the board.
+	* @param type the type of the dropped piece.
+	* @param to the square the piece is dropped on.
+	* @return the encoded move.
+	 */
+	public static int dropMove(byte type, int to)
+	{
+		return to | (type << PIECE_SHIFT) | DROP_FLAG;
+	}
+
+	/**
+	* Getter for the destination square of a move.
+	* @param move the encoded move.
+	* @return the square the piece goes to.
+	 */
+	public static int getTo(int move)
+	{
+		return move & SQUARE_MASK;
+	}
+
+	/**
+	* Getter for the origin square of a board move.
+	* @param move the encoded move.
+	* @return the square the piece comes from.
+	 */
+	public static int getFrom(int move)
+	{
+		return (move >>> FROM_SHIFT) & SQUARE_MASK;
+	}
+
+	/**
+	* Getter for the type of the piece a move plays, before it promotes.
+	* @param move the encoded move.
+	* @return the type of the moving or dropped piece.
+	 */
+	public static byte getPiece(int move)
+	{
+		return (byte) ((move >>> PIECE_SHIFT) & TYPE_MASK);
+	}
+
+	/**
+	* Getter for the type of the piece a move captures.
+	* @param move the encoded move.
+	* @return the type of the captured piece, or 0 if the move is not a capture.
+	 */
+	public static byte getCaptured(int move)
+	{
+		return (byte) ((move >>> CAPTURED_SHIFT) & TYPE_MASK);
+	}
+
+	/**
+	* Getter for the dropped piece type of a move.
+	* @param move the encoded move.
+	* @return the type of the dropped piece, or 0 if the move is not a drop.
+	 */
+	public static byte getDropType(int move)
+	{
+		if (isDrop(move)) return getPiece(move);
+		else return 0;
+	}
+
+	/**
+	* Checks if a move is a drop.
+	* @param move the encoded move.
+	* @return whether the move drops a captured piece.
+	 */
+	public static boolean isDrop(int move)
+	{
+		return (move & DROP_FLAG) != 0;
+	}
+
+	/**
+	* Checks if a move captures a piece.
+	* @param move the encoded move.
+	* @return whether the move captures.
+	 */
+	public static boolean isCapture(int move)
+	{
+		return getCaptured(move) != 0;
+	}
+
+	/**
+	* Checks if a move promotes its piece.
+	* @param move the encoded move.
+	* @return whether the piece promotes on the destination.
+	 */
+	public static boolean isPromotion(int move)
+	{
+		return (move & PROMOTION_FLAG) != 0;
+	}
+
+	/**
+	* Getter for the game state resulting from a move, played on the game state.
+	* @param baseState the game state to play the move on.
+	* @param move the encoded move.
+	* @return the new game state.
+	 */
+	public static GameState applyTo(GameState baseState, int move)
+	{
+		Position board = baseState.position;
+		int to = getTo(move);
+		byte[] movePos = new byte[] {(byte) board.getY(to), (byte) board.getX(to)};
+
+		// Drops are played by type of the piece in hand.
+		if (isDrop(move))
+			return baseState.placePiece(getPiece(move), movePos);
+		else
+		{
+			int from = getFrom(move);
+			return baseState.playMove(
+					new byte[] {(byte) board.getY(from), (byte) board.getX(from)}, movePos);
+		}
+	}
+
+	/**
+	* Getter for a move as the user command playing it in the game.
+	* @param baseState the game state the move is played on.
+	* @param move the encoded move.
+	* @return the string of the move, y-x,y-x for board moves and c[index]->y-x for drops,
+	* with the index of the first piece of the type in the hand as displayed, from 1.
+	 */
+	public static String toCommand(GameState baseState, int move)
+	{
+		Position board = baseState.position;
+		int to = getTo(move);
+		String toStr = board.getY(to) + "-" + board.getX(to);
+		if (isDrop(move))
+			return "c" + getHandIndex(baseState, getDropType(move)) + "->" + toStr;
+		int from = getFrom(move);
+		return board.getY(from) + "-" + board.getX(from) + "," + toStr;
+	}
+
+	/**
+	* Getter for the index of the first piece of a type in the hand of the side to play, as
+	* the hand is displayed and drop commands count it.
+	* @param baseState the game state holding the hand.
+	* @param type the type of the piece.
+	* @return the index of the piece, from 1.
+	 */
+	public static int getHandIndex(GameState baseState, byte type)
+	{
+		int[] hand = baseState.hands[baseState.getTurnByte() - 1];
+		int index = 1;
+		for (byte handType = 1; handType < type; handType++) index += hand[handType];
+		return index;
+	}
+}
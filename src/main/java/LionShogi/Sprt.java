@@ -0,0 +1,157 @@
+package LionShogi;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Class running a sequential probability ratio test (SPRT) between two bot settings: games
+ * of a tournament are played until the log likelihood ratio of bot A being elo1 rather than
+ * elo0 stronger than bot B leaves the bounds given by the error rates. The ratio is the normal
+ * approximation over the game results, so that a change is accepted or rejected with few games. */
+public class Sprt
+{
+	// Results of the test.
+	static final int ACCEPTED = 1;
+	static final int REJECTED = -1;
+	static final int UNDECIDED = 0;
+
+	// Tournament playing the games, and hypotheses of the test.
+	Tournament tournament;
+	double elo0;
+	double elo1;
+
+	// Chances to accept a change which is not better, and to reject one which is.
+	double alpha = 0.05;
+	double beta = 0.05;
+
+	// Most games played without a result, and games between each line printed, 0 for none.
+	int maxGames = 100000;
+	int progressStep = 0;
+
+	// Result of the test, once a bound is reached.
+	private volatile int result = UNDECIDED;
+
+	/**
+	* Getter for the log likelihood ratio of a score, with the normal approximation of the
+	* game results.
+	* @param games the number of games.
+	* @param score the score of bot A, between 0 and 1.
+	* @param variance the variance of a game's result around the score.
+	* @param elo0 the Elo difference of the null hypothesis.
+	* @param elo1 the Elo difference of the alternative hypothesis.
+	* @return the log likelihood ratio, or 0 until the results vary.
+	 */
+	public static double getLlr(int games, double score, double variance, double elo0, double elo1)
+	{
+		if (variance <= 0) return 0;
+		double score0 = Tournament.toScore(elo0);
+		double score1 = Tournament.toScore(elo1);
+		return games * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+	}
+
+	/**
+	* Getter for the log likelihood ratio of the games played so far.
+	* @return the log likelihood ratio.
+	 */
+	public double getLlr()
+	{
+		synchronized (tournament)
+		{
+			return getLlr(tournament.getGames(), tournament.getScore(),
+					tournament.getScoreVariance(), elo0, elo1);
+		}
+	}
+
+	/**
+	* Getter for the bound of the ratio under which the change is rejected.
+	* @return the lower bound.
+	 */
+	public double getLowerBound()
+	{
+		return Math.log(beta / (1 - alpha));
+	}
+
+	/**
+	* Getter for the bound of the ratio over which the change is accepted.
+	* @return the upper bound.
+	 */
+	public double getUpperBound()
+	{
+		return Math.log((1 - beta) / alpha);
+	}
+
+	/**
+	* Checks the ratio after a game, ending the test if it left the bounds.
+	 */
+	private synchronized void checkBounds()
+	{
+		if (result != UNDECIDED) return;
+		double llr = getLlr();
+		if (llr >= getUpperBound()) result = ACCEPTED;
+		else if (llr <= getLowerBound()) result = REJECTED;
+		if (progressStep > 0 && tournament.getGames() % progressStep == 0)
+			System.out.println(getSummary());
+	}
+
+	/**
+	* Plays games on the threads of the tournament until the test ends. Games started before
+	* it ended are finished and counted.
+	* @return ACCEPTED if bot A is elo1 stronger, REJECTED if it is elo0 stronger, or
+	* UNDECIDED if the most games were played first.
+	 */
+	public int run()
+	{
+		RecursiveAction[] tasks = new RecursiveAction[maxGames];
+		for (int i = 0; i < maxGames; i++)
+		{
+			final int game = i;
+			tasks[i] = new RecursiveAction()
+			{
+				@Override
+				protected void compute()
+				{
+					if (result != UNDECIDED) return;
+					tournament.playGame(game);
+					checkBounds();
+				}
+			};
+		}
+		ForkJoinPool pool = new ForkJoinPool(tournament.threads);
+		pool.invoke(new RecursiveAction()
+		{
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
+		pool.shutdown();
+		return result;
+	}
+
+	/**
+	* Getter for a summary of the test.
+	* @return the summary.
+	 */
+	public String getSummary()
+	{
+		String state = "running";
+		if (result == ACCEPTED) state = "accepted - bot A is " + elo1 + " Elo stronger";
+		else if (result == REJECTED) state = "rejected - bot A is not " + elo1 + " Elo stronger";
+		else if (tournament.getGames() >= maxGames) state = "undecided after " + maxGames + " games";
+		return String.format("SPRT [%.1f, %.1f] %s. LLR %.2f (%.2f, %.2f). ", elo0, elo1, state,
+				getLlr(), getLowerBound(), getUpperBound()) + tournament.getSummary();
+	}
+
+	/**
+	* Constructor for a sequential probability ratio test.
+	* @param tournament the tournament between the two bots.
+	* @param elo0 the Elo difference of bot A over bot B of the null hypothesis.
+	* @param elo1 the Elo difference of the alternative hypothesis, above elo0.
+	 */
+	public Sprt(Tournament tournament, double elo0, double elo1)
+	{
+		this.tournament = tournament;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+	}
+}
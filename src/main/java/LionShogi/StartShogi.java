@@ -1,6 +1,12 @@
 package LionShogi;
+import java.util.HashMap;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import java.io.File;
 
@@ -15,7 +21,16 @@ public class StartShogi
 		+ "-Arguments - only 1 argument. Possible arguments: \n"
 		+ "\t term - Use the TextUI interface"
 		+ "\t fx - Use the JavaFX GUI"
-		+ "\t help - Display this help window";
+		+ "\t help - Display this help window"
+		+ "\t tablebase <variant> <file> [threads] - Generate the tablebase of a small variant"
+		+ "\t perft <variant> <depth> [divide] [states] [threads] - Count positions to a depth"
+		+ "\t tournament <variant> <games> [threads] [key=value...] [vs key=value...] - Play "
+		+ "games between two bots, with bot keys overriding the variant's"
+		+ "\t sprt <variant> <elo0> <elo1> [threads] [key=value...] [vs key=value...] - Play "
+		+ "games between two bots until bot A is found elo1 or elo0 stronger"
+		+ "\t engine [variant] - Drive the bot through a USI-like protocol on the standard streams";
+	private static final String QUIT_INPUT = "quit";
+	private static final int INPUT_POLL_TIME = 50;
 
 	// Main components of program.
 	public static StartShogi instance;
@@ -28,10 +43,36 @@ public class StartShogi
 
 	/**
 	* Main method of the program
-	* @param args useless here.
+	* @param args tablebase or perft and their arguments, else useless here.
 	 */
 	public static void main(String[] args)
 	{
+		if (args.length > 0 && args[0].equals("tablebase"))
+		{
+			generateTablebase(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("perft"))
+		{
+			runPerft(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("tournament"))
+		{
+			runTournament(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("sprt"))
+		{
+			runSprt(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("engine"))
+		{
+			runEngine(args);
+			return;
+		}
+
 		// Create main StartShogi object.
 		Scanner mainScanner = new Scanner(System.in);
 		instance = new StartShogi();
@@ -42,35 +83,59 @@ public class StartShogi
 		// Initialize logic handler.
 		LogicHandler mainHandler = new LogicHandler();
 
-		// If bot is true, create a new shogi bot.
+		// If bot is true, create a new shogi bot, with its search statistics watched through JMX.
 		ShogiBot mainBot = null;
-		if (instance.bot) mainBot = new ShogiBot(mainHandler);
+		if (instance.bot)
+		{
+			mainBot = new ShogiBot(mainHandler);
+			mainBot.stats.register("bot");
+		}
 
 		// Try loading a variant.
 		if (new File(instance.filepath).exists())
 		{
 			mainHandler.loadVariant(instance.filepath, mainBot);
+			BlockingQueue<String> inputLines = instance.startInputReader(mainScanner);
+			Future<GameState> botSearch = null;
 
 			while (instance.game) // Game loop
 			{
-				// If it's not player's turn, have bot move.
-				if (!instance.playerTurn && instance.bot) 
+				// If it's not player's turn, have bot search its move on its own thread.
+				if (!instance.playerTurn && instance.bot && botSearch == null)
 				{
-					mainHandler.setState( 
-						mainBot.chooseBestState(mainHandler.currentState));
-					println("Bot played! ");
-					instance.playerTurn = !instance.playerTurn;
+					botSearch = mainBot.startSearch(mainHandler.currentState);
+					println("Bot is thinking... Type move now to have it play at once.");
 				}
 
 				// Reset the GUI and show board.
 				instance.systemUI.reset();
 				mainHandler.plugAndPrintBoard(instance.systemUI);
 
+				// Wait for input, or for the bot's move.
+				String inputLine = instance.waitForInput(inputLines, botSearch);
+				if (inputLine == null)
+				{
+					mainHandler.setState(instance.getBotState(botSearch));
+					botSearch = null;
+					println("Bot played! ");
+					println(mainBot.stats.getSummary());
+					mainBot.startPonder(mainHandler.currentState);
+					instance.playerTurn = !instance.playerTurn;
+					continue;
+				}
+
+				// While the bot searches, only quit, forfeit and move now are processed.
+				if (botSearch != null)
+				{
+					mainHandler.processBotRound(inputLine, mainBot);
+					continue;
+				}
+
 				// Note evolution in turn
 				boolean currentRound = mainHandler.currentState.P0Turn; 
 
 				//Process round
-				mainHandler.processRound(instance.systemUI.getInputLine(mainScanner));
+				mainHandler.processRound(inputLine);
 
 				// Notify change in turn
 				if (mainHandler.currentState.P0Turn != currentRound)
@@ -85,6 +150,237 @@ public class StartShogi
 			System.out.println("ERROR: File non-existant. Try something else.");
 	}
 
+	/**
+	* Generates the tablebase of a variant by retrograde analysis, and writes it to a file.
+	* @param args tablebase, the variant file, the tablebase file, and optionally the number
+	* of threads - all processors by default.
+	 */
+	public static void generateTablebase(String[] args)
+	{
+		if (args.length < 3 || !new File(args[1]).exists())
+		{
+			System.out.println(HELP_MESSAGE);
+			return;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 3 && args[3].matches("[0-9]+"))
+			threads = Math.max(1, Integer.valueOf(args[3]));
+
+		// Load the variant, then index and solve all positions of its material.
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(args[1], null);
+		Tablebase tablebase = new Tablebase(mainHandler.shogiRules, mainHandler.currentState);
+		long startTime = System.currentTimeMillis();
+		TablebaseGenerator generator = new TablebaseGenerator(tablebase, threads);
+		generator.progress = true;
+		byte[] values = generator.generate();
+		if (values == null)
+		{
+			System.out.println("ERROR: No tablebase written to " + args[2]);
+			return;
+		}
+		tablebase.setValues(values);
+		new File(args[2]).getAbsoluteFile().getParentFile().mkdirs();
+		if (tablebase.save(args[2]))
+			System.out.println("Tablebase written to " + args[2] + " in "
+					+ (System.currentTimeMillis() - startTime) / 1000 + "s. Start position: "
+					+ tablebase.probe(mainHandler.currentState));
+	}
+
+	/**
+	* Counts the positions of a variant to a depth, and prints the speed of move generation.
+	* @param args perft, the variant file, the depth, then optionally divide to print the count
+	* of each root move, states to count through game states, and the number of threads.
+	 */
+	public static void runPerft(String[] args)
+	{
+		if (args.length < 3 || !new File(args[1]).exists() || !args[2].matches("[1-9][0-9]*"))
+		{
+			System.out.println(HELP_MESSAGE);
+			return;
+		}
+
+		// Load the variant for a bot giving the moves.
+		LogicHandler mainHandler = new LogicHandler();
+		ShogiBot mainBot = new ShogiBot(mainHandler);
+		mainHandler.loadVariant(args[1], mainBot);
+		Perft perft = new Perft(mainBot);
+		for (int i = 3; i < args.length; i++)
+		{
+			if (args[i].equals("divide")) perft.divide = true;
+			else if (args[i].equals("states")) perft.states = true;
+			else if (args[i].matches("[0-9]+")) perft.threads = Math.max(1, Integer.valueOf(args[i]));
+		}
+
+		// Count and time.
+		int depth = Integer.valueOf(args[2]);
+		long startTime = System.nanoTime();
+		long nodes = perft.run(mainHandler.currentState, depth);
+		long time = Math.max(1, System.nanoTime() - startTime);
+		System.out.println("Perft " + depth + ": " + nodes + " nodes in " + time / 1000000
+				+ " ms, " + nodes * 1000000000L / time + " nodes/s");
+	}
+
+	/**
+	* Starts reading input lines on their own thread, so that the game loop can wait for
+	* either a line or the bot's move. Closed input quits the game.
+	* @param inputScanner the scanner to get input from.
+	* @return the queue of lines read.
+	 */
+	public BlockingQueue<String> startInputReader(Scanner inputScanner)
+	{
+		BlockingQueue<String> inputLines = new LinkedBlockingQueue<>();
+		Thread reader = new Thread(() ->
+		{
+			while (inputScanner.hasNextLine())
+				inputLines.add(systemUI.getInputLine(inputScanner));
+			inputLines.add(QUIT_INPUT);
+		}, "input");
+		reader.setDaemon(true);
+		reader.start();
+		return inputLines;
+	}
+
+	/**
+	* Waits for a line of input, or for the bot's search to end.
+	* @param inputLines the queue of lines read.
+	* @param botSearch the running search of the bot, or null if the bot is not searching.
+	* @return the line of input, or null if the bot's search ended first.
+	 */
+	public String waitForInput(BlockingQueue<String> inputLines, Future<GameState> botSearch)
+	{
+		String inputLine = null;
+		try
+		{
+			while (inputLine == null && (botSearch == null || !botSearch.isDone()))
+				inputLine = inputLines.poll(INPUT_POLL_TIME, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			systemUI.println("Oops. Who interrupted the ogre in his sleep?");
+			return "";
+		}
+		return inputLine;
+	}
+
+	/**
+	* Getter for the game state the bot chose, once its search ended.
+	* @param botSearch the ended search of the bot.
+	* @return the chosen game state.
+	 */
+	public GameState getBotState(Future<GameState> botSearch)
+	{
+		try
+		{
+			return botSearch.get();
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			System.err.println("Bot error!\n" + e.getMessage() + "\nQuitting...");
+			e.printStackTrace();
+			System.exit(0);
+			return null;
+		}
+	}
+
+	/**
+	* Plays games between two bots of a variant on several threads, and prints the results.
+	* @param args tournament, the variant file, the number of games, then optionally the number
+	* of threads, and bot keys as key=value for bot A, then for bot B after vs.
+	 */
+	public static void runTournament(String[] args)
+	{
+		if (args.length < 3 || !new File(args[1]).exists() || !args[2].matches("[1-9][0-9]*"))
+		{
+			System.out.println(HELP_MESSAGE);
+			return;
+		}
+
+		// Read the threads and the keys of each bot.
+		Tournament tournament = new Tournament(args[1]);
+		if (!readBotSettings(args, 3, tournament)) return;
+
+		// Play the games, printing results every tenth of them.
+		int games = Integer.valueOf(args[2]);
+		tournament.progressStep = Math.max(1, games / 10);
+		long startTime = System.currentTimeMillis();
+		tournament.run(games);
+		System.out.println("Tournament done in " + (System.currentTimeMillis() - startTime) / 1000
+				+ "s.\n" + tournament.getSummary());
+	}
+
+	/**
+	* Plays games between two bots of a variant on several threads until a sequential
+	* probability ratio test ends, and prints the result.
+	* @param args sprt, the variant file, the Elo differences of the hypotheses, then optionally
+	* the number of threads, and bot keys as key=value for bot A, then for bot B after vs.
+	 */
+	public static void runSprt(String[] args)
+	{
+		String eloRx = "-?[0-9]+(\\.[0-9]+)?";
+		if (args.length < 4 || !new File(args[1]).exists() || !args[2].matches(eloRx)
+				|| !args[3].matches(eloRx) || Double.valueOf(args[2]) >= Double.valueOf(args[3]))
+		{
+			System.out.println(HELP_MESSAGE);
+			return;
+		}
+
+		// Read the threads and the keys of each bot.
+		Tournament tournament = new Tournament(args[1]);
+		if (!readBotSettings(args, 4, tournament)) return;
+
+		// Play games until the test ends, printing the ratio every hundred games.
+		Sprt sprt = new Sprt(tournament, Double.valueOf(args[2]), Double.valueOf(args[3]));
+		sprt.progressStep = 100;
+		long startTime = System.currentTimeMillis();
+		sprt.run();
+		System.out.println("SPRT done in " + (System.currentTimeMillis() - startTime) / 1000
+				+ "s.\n" + sprt.getSummary());
+	}
+
+	/**
+	* Drives the bot of a variant through a USI-like protocol on the standard streams, with
+	* no UI and no questions asked.
+	* @param args engine, then optionally the variant file - Lion Shogi by default.
+	 */
+	public static void runEngine(String[] args)
+	{
+		String variantPath = LION_PATH;
+		if (args.length > 1) variantPath = args[1];
+		if (!new File(variantPath).exists())
+		{
+			System.out.println(HELP_MESSAGE);
+			return;
+		}
+		new UsiEngine(variantPath).run(new Scanner(System.in));
+	}
+
+	/**
+	* Reads the number of threads and the bot keys of each bot of a tournament.
+	* @param args the arguments of the program.
+	* @param start the index of the first argument to read.
+	* @param tournament the tournament to set up.
+	* @return whether the arguments are valid.
+	 */
+	public static boolean readBotSettings(String[] args, int start, Tournament tournament)
+	{
+		HashMap<String, String> settings = tournament.settingsA;
+		for (int i = start; i < args.length; i++)
+		{
+			if (args[i].equals(Tournament.VERSUS)) settings = tournament.settingsB;
+			else if (args[i].matches("[0-9]+"))
+				tournament.threads = Math.max(1, Integer.valueOf(args[i]));
+			else if (args[i].matches("[a-z_]+=.+"))
+				settings.put(args[i].split("=")[0], args[i].split("=", 2)[1]);
+			else
+			{
+				System.out.println("ERROR: Invalid argument " + args[i] + "\n" + HELP_MESSAGE);
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/** Asks user for variant selection. 
 	 * @param variantScanner the scanner to get input from.
 	 */
@@ -184,20 +480,22 @@ public class StartShogi
 	}
 
 	/**
-	* Uses UI handler to print a line.
+	* Uses UI handler to print a line - or the error stream in headless modes.
 	* @param msg the message to print.
 	 */
 	public static void println(String msg)
 	{
-		instance.systemUI.keepToPrintList(msg + "\n");
+		print(msg + "\n");
 	}
 	
 	/**
-	* Uses UIHandler to print message.
+	* Uses UIHandler to print message - or the error stream in headless modes, which have no
+	* UI and may use the output stream for results.
 	* @param msg the message to print.
 	 */
 	public static void print(String msg)
 	{
-		instance.systemUI.keepToPrintList(msg);
+		if (instance == null) System.err.print(msg);
+		else instance.systemUI.keepToPrintList(msg);
 	}
 }
@@ -0,0 +1,637 @@
+package LionShogi;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Class for the tablebase of a small variant. Each position with both kings on the board and
+ * the material of the game gets a unique index, seen from the side to move. Its value is a byte:
+ * 0 for a draw, else the number of plies until a king is captured - odd if the side to move
+ * wins, even if it loses. */
+public class Tablebase
+{
+	// Header of tablebase files: magic number, board height and width, number of positions.
+	static final int MAGIC = 0x4C535442;
+	static final int HEADER_SIZE = 20;
+
+	// Size of each part of a mapped file - a mapping holds at most 2GB.
+	private static final long MAP_SIZE = 1L << 30;
+
+	// Type of the king of each camp, value of drawn positions, and most squares indexed.
+	static final byte KING = 1;
+	static final int DRAW = 0;
+	private static final int MAX_SQUARES = 62;
+
+	// Game rules and board dimensions of the variant.
+	GameRules shogiRules;
+	int height;
+	int width;
+	int squares;
+	int pieceTypes;
+
+	// Types pieces are captured as, other than kings, and the number of pieces of each.
+	private byte[] baseTypes;
+	private int[] baseCounts;
+	private int[] baseOfType;
+
+	// Groups of pieces on the board - one for each camp and form of a base type.
+	byte[] groupTypes;
+	byte[] groupCamps;
+	private int[] groupBases;
+	private int[] groupOf;
+
+	// Compositions of each base type: counts in the hand of each camp, then in each group.
+	// They are coded in base count + 1, and each code has an index among the compositions.
+	private long[] handPowers;
+	private long[] groupPowers;
+	private int[][] compositionIndex;
+	private int[] baseRadix;
+
+	// Distributions of the pieces between hands and groups, by their key from the composition
+	// of each base type - with their groups in use, counts, hands and first index.
+	private int[] distributionOf;
+	private int[][] distributionGroups;
+	private int[][] distributionCounts;
+	private long[][] distributionRadix;
+	private int[][][] distributionHands;
+	long[] offsets;
+	long positions;
+
+	// Binomial coefficients up to the number of squares.
+	private long[][] binomials;
+
+	// Values of the positions, in memory while generating or mapped from a file.
+	private byte[] values;
+	private MappedByteBuffer[] mappedValues;
+
+	/**
+	* Getter for the number of longs of a scratch array for indexing positions.
+	* @return the size of the scratch array.
+	 */
+	public int getScratchSize()
+	{
+		return groupTypes.length + 2 * baseTypes.length;
+	}
+
+	/**
+	* Getter for the index of a position, with the side to move as black.
+	* @param types the type of the piece on each square.
+	* @param camps the camp of the piece on each square.
+	* @param hands the number of pieces in hand of each camp, by type.
+	* @param rotate whether white is to move, so the board and camps are turned around first.
+	* @param scratch an array of getScratchSize() longs, so that threads index without allocating.
+	* @return the index of the position, or -1 if it is not in the tablebase.
+	 */
+	public long getIndex(byte[] types, byte[] camps, int[][] hands, boolean rotate, long[] scratch)
+	{
+		int groups = groupTypes.length;
+		int bases = baseTypes.length;
+		for (int i = 0; i < groups + 2 * bases; i++) scratch[i] = 0;
+
+		// Find the squares of each group, composition code and piece count of each base type.
+		int blackKing = -1, whiteKing = -1;
+		for (int s = 0; s < squares; s++)
+		{
+			int square = s;
+			if (rotate) square = squares - 1 - s;
+			byte type = types[square];
+			if (type == 0) continue;
+			int camp = camps[square];
+			if (rotate) camp = 3 - camp;
+
+			if (type == KING)
+			{
+				if (camp == 1) blackKing = s;
+				else whiteKing = s;
+				continue;
+			}
+			int group = groupOf[(camp - 1) * pieceTypes + type];
+			if (group < 0) return -1;
+			scratch[group] |= 1L << s;
+			scratch[groups + groupBases[group]] += groupPowers[group];
+			scratch[groups + bases + groupBases[group]]++;
+		}
+		if (blackKing < 0 || whiteKing < 0) return -1;
+
+		// Add pieces in hand.
+		for (int camp = 0; camp < 2; camp++)
+		{
+			int[] hand = hands[camp];
+			if (rotate) hand = hands[1 - camp];
+			for (int type = 1; type < hand.length; type++)
+			{
+				if (hand[type] == 0) continue;
+				int base = baseOfType[type];
+				if (base < 0) return -1;
+				scratch[groups + base] += hand[type] * handPowers[2 * base + camp];
+				scratch[groups + bases + base] += hand[type];
+			}
+		}
+
+		// Get the distribution from the composition of each base type.
+		int key = 0;
+		for (int base = 0; base < bases; base++)
+		{
+			if (scratch[groups + bases + base] != baseCounts[base]) return -1;
+			key += compositionIndex[base][(int) scratch[groups + base]] * baseRadix[base];
+		}
+		int distribution = distributionOf[key];
+		if (distribution < 0) return -1;
+
+		// Rank the kings' squares, then the squares of each group among the free squares left.
+		long free = ((1L << squares) - 1) & ~(1L << blackKing);
+		long rank = (long) blackKing * (squares - 1) + Long.bitCount(free & ((1L << whiteKing) - 1));
+		free &= ~(1L << whiteKing);
+		int[] usedGroups = distributionGroups[distribution];
+		long[] radix = distributionRadix[distribution];
+		for (int i = 0; i < usedGroups.length; i++)
+		{
+			long mask = scratch[usedGroups[i]];
+			long subset = 0;
+			int k = 1;
+			for (long rest = mask; rest != 0; rest &= rest - 1)
+			{
+				int square = Long.numberOfTrailingZeros(rest);
+				subset += binomials[Long.bitCount(free & ((1L << square) - 1))][k++];
+			}
+			rank = rank * radix[i] + subset;
+			free &= ~mask;
+		}
+		return offsets[distribution] + rank;
+	}
+
+	/**
+	* Sets a position from its index, with black to move.
+	* @param index the index of the position.
+	* @param types the array to set the type of the piece on each square in.
+	* @param camps the array to set the camp of the piece on each square in.
+	* @param hands the arrays to set the number of pieces in hand of each camp in, by type.
+	* @param scratch an array of getScratchSize() longs.
+	 */
+	public void getPosition(long index, byte[] types, byte[] camps, int[][] hands, long[] scratch)
+	{
+		// Find the distribution of the index.
+		int low = 0, high = offsets.length - 2;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (offsets[mid] <= index) low = mid;
+			else high = mid - 1;
+		}
+		int distribution = low;
+
+		// Split the rank into the subset of each group, from the last.
+		long rank = index - offsets[distribution];
+		int[] usedGroups = distributionGroups[distribution];
+		int[] counts = distributionCounts[distribution];
+		long[] radix = distributionRadix[distribution];
+		for (int i = usedGroups.length - 1; i >= 0; i--)
+		{
+			scratch[i] = rank % radix[i];
+			rank /= radix[i];
+		}
+
+		// Place the kings.
+		for (int square = 0; square < squares; square++)
+		{
+			types[square] = 0;
+			camps[square] = 0;
+		}
+		int blackKing = (int) (rank / (squares - 1));
+		long free = ((1L << squares) - 1) & ~(1L << blackKing);
+		int whiteKing = selectSquare(free, (int) (rank % (squares - 1)));
+		free &= ~(1L << whiteKing);
+		types[blackKing] = KING;
+		camps[blackKing] = 1;
+		types[whiteKing] = KING;
+		camps[whiteKing] = 2;
+
+		// Place each group on the free squares its subset stands for.
+		for (int i = 0; i < usedGroups.length; i++)
+		{
+			long subset = scratch[i];
+			long mask = 0;
+			int c = Long.bitCount(free);
+			for (int k = counts[i]; k >= 1; k--)
+			{
+				c--;
+				while (binomials[c][k] > subset) c--;
+				subset -= binomials[c][k];
+				int square = selectSquare(free, c);
+				mask |= 1L << square;
+				types[square] = groupTypes[usedGroups[i]];
+				camps[square] = groupCamps[usedGroups[i]];
+			}
+			free &= ~mask;
+		}
+
+		// Fill hands.
+		for (int camp = 0; camp < 2; camp++)
+			System.arraycopy(distributionHands[distribution][camp], 0, hands[camp], 0, pieceTypes);
+	}
+
+	/**
+	* Getter for a free square by its rank among free squares.
+	* @param free the mask of free squares.
+	* @param rank the number of free squares before it.
+	* @return the square.
+	 */
+	private static int selectSquare(long free, int rank)
+	{
+		for (int i = 0; i < rank; i++) free &= free - 1;
+		return Long.numberOfTrailingZeros(free);
+	}
+
+	/**
+	* Turns a position around, so that each camp plays the other's side.
+	* @param types the type of the piece on each square.
+	* @param camps the camp of the piece on each square.
+	* @param hands the number of pieces in hand of each camp, by type.
+	 */
+	public static void rotate(byte[] types, byte[] camps, int[][] hands)
+	{
+		for (int square = 0, other = types.length - 1; square < other; square++, other--)
+		{
+			byte type = types[square];
+			types[square] = types[other];
+			types[other] = type;
+			byte camp = camps[square];
+			camps[square] = camps[other];
+			camps[other] = camp;
+		}
+		for (int square = 0; square < camps.length; square++)
+			if (camps[square] != 0) camps[square] = (byte) (3 - camps[square]);
+		int[] hand = hands[0];
+		hands[0] = hands[1];
+		hands[1] = hand;
+	}
+
+	/**
+	* Getter for the value of a position.
+	* @param index the index of the position.
+	* @return the value of the position, between 0 and 255.
+	 */
+	public int getValue(long index)
+	{
+		if (values != null) return values[(int) index] & 0xFF;
+		return mappedValues[(int) (index / MAP_SIZE)].get((int) (index % MAP_SIZE)) & 0xFF;
+	}
+
+	/**
+	* Getter for the value of a game state.
+	* @param state the game state.
+	* @return the value for the side to move, or -1 if the tablebase does not have it.
+	 */
+	public int probe(GameState state)
+	{
+		Position board = state.position;
+		if (state.victor != 0 || (values == null && mappedValues == null) || board.squares != squares)
+			return -1;
+
+		// Copy the board and index it from the side to move.
+		byte[] types = new byte[squares];
+		byte[] camps = new byte[squares];
+		for (int square = 0; square < squares; square++)
+		{
+			types[square] = board.getType(square);
+			camps[square] = board.getCamp(square);
+		}
+		long index = getIndex(types, camps, state.hands, !state.P0Turn, new long[getScratchSize()]);
+		if (index < 0) return -1;
+		return getValue(index);
+	}
+
+	/**
+	* Getter for the best move of a game state: the fastest win, else a draw, else the slowest loss.
+	* @param state the game state.
+	* @param moveGenerator the generator of moves.
+	* @return the encoded move, or 0 if the tablebase does not have the game state.
+	 */
+	public int getBestMove(GameState state, MoveGenerator moveGenerator)
+	{
+		if (probe(state) < 0) return 0;
+		byte camp = state.getTurnByte();
+		MoveList moves = new MoveList(64);
+		moveGenerator.generateMoves(state.position, camp, state.hands[camp - 1], moves);
+
+		// Rank each move by the value of the position it leads to, for the other side.
+		int bestMove = 0;
+		int bestRank = Integer.MIN_VALUE;
+		for (int i = 0; i < moves.size; i++)
+		{
+			GameState child = ShogiMove.applyTo(state, moves.moves[i]);
+			int rank;
+			if (child.victor == camp) rank = 256; // King captured.
+			else
+			{
+				int value = probe(child);
+				if (value < 0) continue;
+				if (value == DRAW) rank = 0;
+				else if (value % 2 == 0) rank = 256 - value; // Other side loses.
+				else rank = value - 256; // Other side wins.
+			}
+			if (rank > bestRank)
+			{
+				bestRank = rank;
+				bestMove = moves.moves[i];
+			}
+		}
+		return bestMove;
+	}
+
+	/**
+	* Getter for the game state of a position, with black to move.
+	* @param index the index of the position.
+	* @return the game state.
+	 */
+	public GameState getGameState(long index)
+	{
+		byte[] types = new byte[squares];
+		byte[] camps = new byte[squares];
+		int[][] hands = new int[2][pieceTypes];
+		getPosition(index, types, camps, hands, new long[getScratchSize()]);
+		Position board = new Position(height, width, pieceTypes);
+		for (int square = 0; square < squares; square++)
+			if (types[square] != 0) board.setPiece(square, types[square], camps[square]);
+		return new GameState(shogiRules, board, hands, true, null);
+	}
+
+	/**
+	* Sets the values of all positions, once generated.
+	* @param values the value of each position by index.
+	 */
+	public void setValues(byte[] values)
+	{
+		this.values = values;
+	}
+
+	/**
+	* Writes the values of all positions to a tablebase file.
+	* @param filepath the path of the file.
+	* @return whether the file was written.
+	 */
+	public boolean save(String filepath)
+	{
+		try (RandomAccessFile file = new RandomAccessFile(filepath, "rw"))
+		{
+			file.setLength(0);
+			file.writeInt(MAGIC);
+			file.writeInt(height);
+			file.writeInt(width);
+			file.writeLong(positions);
+			file.write(values);
+			return true;
+		}
+		catch (IOException e)
+		{
+			StartShogi.println("ERROR: Could not write tablebase " + filepath);
+			return false;
+		}
+	}
+
+	/**
+	* Maps the values of all positions from a tablebase file, without reading it all.
+	* @param filepath the path of the file.
+	* @return whether the file matches the variant and was mapped.
+	 */
+	public boolean load(String filepath)
+	{
+		if (positions < 0) return false;
+		try (RandomAccessFile file = new RandomAccessFile(filepath, "r"))
+		{
+			// Check the header is the one of this variant.
+			if (file.length() != HEADER_SIZE + positions || file.readInt() != MAGIC
+					|| file.readInt() != height || file.readInt() != width
+					|| file.readLong() != positions)
+			{
+				StartShogi.println("ERROR: Tablebase does not match the variant: " + filepath);
+				return false;
+			}
+
+			// Map the values in parts - the mappings stay valid once the file is closed.
+			FileChannel channel = file.getChannel();
+			int parts = (int) ((positions + MAP_SIZE - 1) / MAP_SIZE);
+			mappedValues = new MappedByteBuffer[parts];
+			for (int i = 0; i < parts; i++)
+				mappedValues[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + i * MAP_SIZE,
+						Math.min(MAP_SIZE, positions - i * MAP_SIZE));
+			return true;
+		}
+		catch (IOException e)
+		{
+			StartShogi.println("ERROR: Could not read tablebase " + filepath);
+			return false;
+		}
+	}
+
+	/**
+	* Adds all compositions of a number of pieces between slots to a list.
+	* @param composition the composition being filled.
+	* @param slot the slot to fill next.
+	* @param left the number of pieces left to put in slots.
+	* @param compositions the list to add the compositions to.
+	 */
+	private static void addCompositions(int[] composition, int slot, int left,
+			ArrayList<int[]> compositions)
+	{
+		if (slot == composition.length - 1)
+		{
+			composition[slot] = left;
+			compositions.add(composition.clone());
+			return;
+		}
+		for (int count = left; count >= 0; count--)
+		{
+			composition[slot] = count;
+			addCompositions(composition, slot + 1, left - count, compositions);
+		}
+	}
+
+	/**
+	* Constructor for the tablebase of a variant, for the material of a game state.
+	* @param shogiRules the game rules of the variant, with compiled move tables.
+	* @param state a game state of the variant - the material does not change over a game.
+	 */
+	public Tablebase(GameRules shogiRules, GameState state)
+	{
+		this.shogiRules = shogiRules;
+		Position board = state.position;
+		height = board.height;
+		width = board.width;
+		squares = board.squares;
+		pieceTypes = board.pieceTypes;
+		if (squares > MAX_SQUARES)
+		{
+			positions = -1;
+			return;
+		}
+
+		// Count the pieces of each base type, on the board and in hands.
+		int[] counts = new int[pieceTypes];
+		for (int square = 0; square < squares; square++)
+			if (board.getType(square) != 0 && board.getType(square) != KING)
+				counts[shogiRules.getDemoteType(board.getType(square))]++;
+		for (int[] hand : state.hands)
+			for (byte type = 1; type < hand.length; type++)
+				counts[shogiRules.getDemoteType(type)] += hand[type];
+
+		// List base types, and a group for each camp and form of them.
+		ArrayList<Integer> bases = new ArrayList<>();
+		ArrayList<Integer> groups = new ArrayList<>();
+		baseOfType = new int[pieceTypes];
+		groupOf = new int[2 * pieceTypes];
+		Arrays.fill(baseOfType, -1);
+		Arrays.fill(groupOf, -1);
+		int[] firstGroup = new int[pieceTypes];
+		int[] baseGroups = new int[pieceTypes];
+		for (byte base = 1; base < pieceTypes; base++)
+		{
+			if (counts[base] == 0 || base == KING) continue;
+			baseOfType[base] = bases.size();
+			firstGroup[bases.size()] = groups.size();
+			for (byte type = 1; type < pieceTypes; type++)
+				if (type != KING && shogiRules.getDemoteType(type) == base)
+					for (int camp = 1; camp <= 2; camp++)
+					{
+						groupOf[(camp - 1) * pieceTypes + type] = groups.size();
+						groups.add((camp << 8) | type);
+						baseGroups[bases.size()]++;
+					}
+			bases.add((int) base);
+		}
+		baseTypes = new byte[bases.size()];
+		baseCounts = new int[bases.size()];
+		groupTypes = new byte[groups.size()];
+		groupCamps = new byte[groups.size()];
+		groupBases = new int[groups.size()];
+		for (int i = 0; i < groups.size(); i++)
+		{
+			groupTypes[i] = (byte) (groups.get(i) & 0xFF);
+			groupCamps[i] = (byte) (groups.get(i) >> 8);
+			groupBases[i] = baseOfType[shogiRules.getDemoteType(groupTypes[i])];
+		}
+
+		// Code each composition of each base type, and give it an index.
+		handPowers = new long[2 * bases.size()];
+		groupPowers = new long[groups.size()];
+		compositionIndex = new int[bases.size()][];
+		baseRadix = new int[bases.size()];
+		ArrayList<ArrayList<int[]>> compositions = new ArrayList<>();
+		int keys = 1;
+		for (int base = 0; base < bases.size(); base++)
+		{
+			baseTypes[base] = (byte) (int) bases.get(base);
+			baseCounts[base] = counts[baseTypes[base]];
+			int slots = 2 + baseGroups[base];
+			long power = 1;
+			for (int slot = 0; slot < slots; slot++)
+			{
+				if (slot < 2) handPowers[2 * base + slot] = power;
+				else groupPowers[firstGroup[base] + slot - 2] = power;
+				power *= baseCounts[base] + 1;
+			}
+
+			ArrayList<int[]> baseCompositions = new ArrayList<>();
+			addCompositions(new int[slots], 0, baseCounts[base], baseCompositions);
+			compositionIndex[base] = new int[(int) power];
+			for (int i = 0; i < baseCompositions.size(); i++)
+			{
+				int code = 0;
+				int[] composition = baseCompositions.get(i);
+				for (int slot = composition.length - 1; slot >= 0; slot--)
+					code = code * (baseCounts[base] + 1) + composition[slot];
+				compositionIndex[base][code] = i;
+			}
+			compositions.add(baseCompositions);
+			baseRadix[base] = keys;
+			keys *= baseCompositions.size();
+		}
+
+		// Binomial coefficients, for ranking squares of groups.
+		binomials = new long[squares + 1][squares + 1];
+		for (int n = 0; n <= squares; n++)
+		{
+			binomials[n][0] = 1;
+			for (int k = 1; k <= n; k++) binomials[n][k] = binomials[n - 1][k - 1] + binomials[n - 1][k];
+		}
+
+		// Make each distribution fitting on the board, and count its positions.
+		distributionOf = new int[keys];
+		ArrayList<int[]> usedGroupList = new ArrayList<>();
+		ArrayList<int[]> countList = new ArrayList<>();
+		ArrayList<long[]> radixList = new ArrayList<>();
+		ArrayList<int[][]> handList = new ArrayList<>();
+		ArrayList<Long> offsetList = new ArrayList<>();
+		positions = 0;
+		try
+		{
+			for (int key = 0; key < keys; key++)
+			{
+				int[] groupCounts = new int[groups.size()];
+				int[][] hands = new int[2][pieceTypes];
+				int onBoard = 2;
+				for (int base = 0; base < bases.size(); base++)
+				{
+					int[] composition = compositions.get(base).get(
+							(key / baseRadix[base]) % compositions.get(base).size());
+					hands[0][baseTypes[base]] = composition[0];
+					hands[1][baseTypes[base]] = composition[1];
+					for (int slot = 2; slot < composition.length; slot++)
+					{
+						groupCounts[firstGroup[base] + slot - 2] = composition[slot];
+						onBoard += composition[slot];
+					}
+				}
+				if (onBoard > squares)
+				{
+					distributionOf[key] = -1;
+					continue;
+				}
+
+				// Kings take two squares, then each group chooses its squares among the rest.
+				int used = 0;
+				for (int count : groupCounts) if (count > 0) used++;
+				int[] usedGroups = new int[used];
+				int[] usedCounts = new int[used];
+				long[] radix = new long[used];
+				long size = squares * (squares - 1);
+				int free = squares - 2;
+				used = 0;
+				for (int group = 0; group < groupCounts.length; group++)
+				{
+					if (groupCounts[group] == 0) continue;
+					usedGroups[used] = group;
+					usedCounts[used] = groupCounts[group];
+					radix[used] = binomials[free][groupCounts[group]];
+					size = Math.multiplyExact(size, radix[used]);
+					free -= groupCounts[group];
+					used++;
+				}
+
+				distributionOf[key] = offsetList.size();
+				usedGroupList.add(usedGroups);
+				countList.add(usedCounts);
+				radixList.add(radix);
+				handList.add(hands);
+				offsetList.add(positions);
+				positions = Math.addExact(positions, size);
+			}
+		}
+		catch (ArithmeticException e) // Too many positions to index.
+		{
+			positions = -1;
+			return;
+		}
+
+		distributionGroups = usedGroupList.toArray(new int[0][]);
+		distributionCounts = countList.toArray(new int[0][]);
+		distributionRadix = radixList.toArray(new long[0][]);
+		distributionHands = handList.toArray(new int[0][][]);
+		offsets = new long[offsetList.size() + 1];
+		for (int i = 0; i < offsetList.size(); i++) offsets[i] = offsetList.get(i);
+		offsets[offsetList.size()] = positions;
+	}
+}
@@ -0,0 +1,375 @@
+package LionShogi;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Class generating the values of a tablebase by retrograde analysis. Positions where the king
+ * can be captured are won in 1 ply, then each pass goes back one ply from the positions of the
+ * last: a position with a move to a lost position is won, and a position whose moves all lead to
+ * won positions is lost once the last of them is found. Positions left are draws. */
+public class TablebaseGenerator
+{
+	// Positions each thread takes at once, and most positions held in memory.
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final long MAX_POSITIONS = Integer.MAX_VALUE - 8;
+	private static final int MAX_VALUE = 255;
+
+	// Atomic decrements of the counts of moves left, shared by threads.
+	private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+	// Tablebase to fill, game rules and number of threads.
+	Tablebase tablebase;
+	GameRules shogiRules;
+	int threads;
+
+	// Most moves a position can have to be counted, and a count found past it, or 0.
+	int maxMoves = MAX_VALUE;
+	private volatile int tooManyMoves;
+
+	// Whether to print the positions found by each pass.
+	boolean progress = false;
+
+	// Value of each position, and number of its moves not yet found to lead to a won position.
+	private byte[] values;
+	private byte[] moveCounts;
+
+	// Squares a piece can come from to reach a square, by [type * squares + square], and the
+	// mask of squares of the line in between that must be empty, for each.
+	private int[][] originSquares;
+	private long[][] originLines;
+
+	/**
+	* Generates the values of all positions.
+	* @return the value of each position by index, or null if there are too many positions,
+	* moves of a position or plies.
+	 */
+	public byte[] generate()
+	{
+		if (tablebase.positions < 0 || tablebase.positions > MAX_POSITIONS)
+		{
+			StartShogi.println("ERROR: Too many positions for a tablebase: " + tablebase.positions);
+			return null;
+		}
+		values = new byte[(int) tablebase.positions];
+		moveCounts = new byte[(int) tablebase.positions];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		// Find positions won at once and count the moves of the others.
+		long found = runPass(pool, 0);
+		if (tooManyMoves > 0)
+		{
+			StartShogi.println("ERROR: Too many moves in a position for a tablebase: " + tooManyMoves);
+			pool.shutdown();
+			return null;
+		}
+		if (progress)
+			StartShogi.println("Positions: " + tablebase.positions + ", won in 1: " + found);
+
+		// Go back one ply at a time until no position is found.
+		for (int ply = 1; found > 0; ply++)
+		{
+			if (ply == MAX_VALUE)
+			{
+				StartShogi.println("ERROR: Positions longer than " + MAX_VALUE + " plies.");
+				pool.shutdown();
+				return null;
+			}
+			found = runPass(pool, ply);
+			if (progress && found > 0) StartShogi.println("Plies " + (ply + 1) + ": " + found);
+		}
+		pool.shutdown();
+		moveCounts = null;
+		return values;
+	}
+
+	/**
+	* Runs a pass over all positions, with threads taking chunks of positions in turn.
+	* @param pool the pool of threads.
+	* @param ply the value of the positions to go back from, or 0 for the first pass.
+	* @return the number of positions given a value in the pass.
+	 */
+	private long runPass(ForkJoinPool pool, int ply)
+	{
+		AtomicLong nextChunk = new AtomicLong();
+		AtomicLong found = new AtomicLong();
+		RecursiveAction[] tasks = new RecursiveAction[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			tasks[i] = new RecursiveAction()
+			{
+				@Override
+				protected void compute()
+				{
+					// Each thread has its own position and scratch array.
+					byte[] types = new byte[tablebase.squares];
+					byte[] camps = new byte[tablebase.squares];
+					int[][] hands = new int[2][tablebase.pieceTypes];
+					long[] scratch = new long[tablebase.getScratchSize()];
+					long threadFound = 0;
+					for (long start = nextChunk.getAndAdd(CHUNK_SIZE); start < tablebase.positions;
+							start = nextChunk.getAndAdd(CHUNK_SIZE))
+					{
+						long end = Math.min(start + CHUNK_SIZE, tablebase.positions);
+						for (long index = start; index < end; index++)
+						{
+							if (ply == 0)
+							{
+								tablebase.getPosition(index, types, camps, hands, scratch);
+								if (countMoves(index, types, camps, hands)) threadFound++;
+							}
+							else if ((values[(int) index] & 0xFF) == ply)
+							{
+								tablebase.getPosition(index, types, camps, hands, scratch);
+								threadFound += addPredecessors(ply, types, camps, hands, scratch);
+							}
+						}
+					}
+					found.addAndGet(threadFound);
+				}
+			};
+		}
+		pool.invoke(new RecursiveAction()
+		{
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
+		return found.get();
+	}
+
+	/**
+	* Sets a position as won in 1 ply if black can capture the white king, else counts its moves.
+	* @param index the index of the position.
+	* @param types the type of the piece on each square.
+	* @param camps the camp of the piece on each square.
+	* @param hands the number of pieces in hand of each camp, by type.
+	* @return whether the position is won in 1 ply.
+	 */
+	private boolean countMoves(long index, byte[] types, byte[] camps, int[][] hands)
+	{
+		int count = 0;
+		int empty = 0;
+		for (int from = 0; from < tablebase.squares; from++)
+		{
+			if (camps[from] != 1)
+			{
+				if (camps[from] == 0) empty++;
+				continue;
+			}
+			int[] steps = shogiRules.getStepTargets(types[from], (byte) 1, from);
+			if (steps == null) continue; // Piece has no movement.
+
+			// Count steps and squares of lines which are not onto a black piece.
+			for (int to : steps)
+			{
+				if (camps[to] == 1) continue;
+				if (camps[to] == 2 && types[to] == Tablebase.KING) return setWonAtOnce(index);
+				count++;
+			}
+			for (int[] line : shogiRules.getLineTargets(types[from], (byte) 1, from))
+				for (int to : line)
+				{
+					if (camps[to] == 1) break;
+					if (camps[to] == 2 && types[to] == Tablebase.KING) return setWonAtOnce(index);
+					count++;
+					if (camps[to] != 0) break;
+				}
+		}
+
+		// Each type of piece in hand can be dropped on each empty square.
+		for (int type = 1; type < hands[0].length; type++)
+			if (hands[0][type] > 0) count += empty;
+		if (count > maxMoves)
+		{
+			tooManyMoves = count;
+			return false;
+		}
+		moveCounts[(int) index] = (byte) count;
+		return false;
+	}
+
+	/**
+	* Sets a position as won in 1 ply.
+	* @param index the index of the position.
+	* @return true, as the position is won.
+	 */
+	private boolean setWonAtOnce(long index)
+	{
+		values[(int) index] = 1;
+		return true;
+	}
+
+	/**
+	* Gives a value to the positions which have a move to a position of the last pass. If that
+	* position is lost, they are won one ply later. If it is won, they lose one of the moves left
+	* to them, and are lost one ply later once no move is left.
+	* @param ply the value of the position.
+	* @param types the type of the piece on each square of the position, with black to move.
+	* @param camps the camp of the piece on each square.
+	* @param hands the number of pieces in hand of each camp, by type.
+	* @param scratch the scratch array for indexing.
+	* @return the number of positions given a value.
+	 */
+	private int addPredecessors(int ply, byte[] types, byte[] camps, int[][] hands, long[] scratch)
+	{
+		// Turn the position around, so that black is the side which just moved.
+		Tablebase.rotate(types, camps, hands);
+		int squares = tablebase.squares;
+		long occupied = 0;
+		for (int square = 0; square < squares; square++)
+			if (types[square] != 0) occupied |= 1L << square;
+
+		int found = 0;
+		for (int to = 0; to < squares; to++)
+		{
+			if (camps[to] != 1) continue;
+			byte type = types[to];
+
+			// Take back a drop of the piece.
+			if (type != Tablebase.KING && shogiRules.getDemoteType(type) == type)
+			{
+				types[to] = 0;
+				camps[to] = 0;
+				hands[0][type]++;
+				found += setPredecessor(ply, types, camps, hands, scratch);
+				hands[0][type]--;
+				types[to] = type;
+				camps[to] = 1;
+			}
+
+			// Take back a move of a piece which is of this type once it reaches the square.
+			for (byte fromType = 1; fromType < tablebase.pieceTypes; fromType++)
+			{
+				if (getMovedType(fromType, to) != type) continue;
+				int[] origins = originSquares[fromType * squares + to];
+				long[] lines = originLines[fromType * squares + to];
+				for (int i = 0; i < origins.length; i++)
+				{
+					int from = origins[i];
+					if ((occupied & ((1L << from) | lines[i])) != 0) continue;
+					types[from] = fromType;
+					camps[from] = 1;
+
+					// The move could have been onto an empty square or captured any piece.
+					types[to] = 0;
+					camps[to] = 0;
+					found += setPredecessor(ply, types, camps, hands, scratch);
+					for (byte captured = 1; captured < tablebase.pieceTypes; captured++)
+					{
+						byte handType = shogiRules.getDemoteType(captured);
+						if (captured == Tablebase.KING || hands[0][handType] == 0) continue;
+						types[to] = captured;
+						camps[to] = 2;
+						hands[0][handType]--;
+						found += setPredecessor(ply, types, camps, hands, scratch);
+						hands[0][handType]++;
+					}
+
+					types[from] = 0;
+					camps[from] = 0;
+					types[to] = type;
+					camps[to] = 1;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	* Gives a value to a position with a move to a position of the last pass, if it has none.
+	* @param ply the value of the position of the last pass.
+	* @param types the type of the piece on each square, with black to move.
+	* @param camps the camp of the piece on each square.
+	* @param hands the number of pieces in hand of each camp, by type.
+	* @param scratch the scratch array for indexing.
+	* @return 1 if the position was given a value, else 0.
+	 */
+	private int setPredecessor(int ply, byte[] types, byte[] camps, int[][] hands, long[] scratch)
+	{
+		long index = tablebase.getIndex(types, camps, hands, false, scratch);
+		if (index < 0 || values[(int) index] != 0) return 0;
+		if (ply % 2 == 0) // The move leads to a lost position - won a ply later.
+		{
+			values[(int) index] = (byte) (ply + 1);
+			return 1;
+		}
+
+		// The move leads to a won position - lost a ply later once no move is left.
+		int left = (byte) COUNTS.getAndAdd(moveCounts, (int) index, (byte) -1) & 0xFF;
+		if (left == 1)
+		{
+			values[(int) index] = (byte) (ply + 1);
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	* Getter for the type a black piece has once it moved to a square.
+	* @param type the type of the piece.
+	* @param to the square it moves to.
+	* @return the type of the piece, promoted if the square is within its promotion range.
+	 */
+	private byte getMovedType(byte type, int to)
+	{
+		if (to / tablebase.width < shogiRules.getPromotionDist(type))
+			return shogiRules.getPromotion(type);
+		else return type;
+	}
+
+	/**
+	* Constructor for a tablebase generator.
+	* @param tablebase the tablebase to generate the values of.
+	* @param threads the number of threads of the passes.
+	 */
+	public TablebaseGenerator(Tablebase tablebase, int threads)
+	{
+		this.tablebase = tablebase;
+		this.shogiRules = tablebase.shogiRules;
+		this.threads = Math.max(1, threads);
+
+		// For each black piece type and square, find the squares it is reached from.
+		int squares = tablebase.squares;
+		originSquares = new int[tablebase.pieceTypes * squares][0];
+		originLines = new long[tablebase.pieceTypes * squares][0];
+		for (byte type = 1; type < tablebase.pieceTypes; type++)
+			for (int from = 0; from < squares; from++)
+			{
+				int[] steps = shogiRules.getStepTargets(type, (byte) 1, from);
+				if (steps == null) break; // Piece has no movement.
+				for (int to : steps) addOrigin(type, from, to, 0);
+				for (int[] line : shogiRules.getLineTargets(type, (byte) 1, from))
+				{
+					long between = 0;
+					for (int to : line)
+					{
+						addOrigin(type, from, to, between);
+						between |= 1L << to;
+					}
+				}
+			}
+	}
+
+	/**
+	* Adds a square a piece type reaches a square from.
+	* @param type the type of the piece.
+	* @param from the square the piece moves from.
+	* @param to the square the piece moves to.
+	* @param between the mask of the squares in between, which must be empty.
+	 */
+	private void addOrigin(byte type, int from, int to, long between)
+	{
+		int index = type * tablebase.squares + to;
+		int count = originSquares[index].length;
+		originSquares[index] = Arrays.copyOf(originSquares[index], count + 1);
+		originLines[index] = Arrays.copyOf(originLines[index], count + 1);
+		originSquares[index][count] = from;
+		originLines[index][count] = between;
+	}
+}
@@ -9,6 +9,10 @@ public class TermUI implements UIHandler
 	static int flushSize = 0;
 	static ArrayList<String> printList = new ArrayList<>();
 
+	// Lock of the lines to flush and the print list - input is read on its own thread, and
+	// the bot's threads keep messages to print.
+	private static final Object PRINT_LOCK = new Object();
+
 	// Grid bars for output design.
 	private static final char GRID_BR_LEFT = '─';
 	private static final char GRID_BR_UP = '│';
@@ -49,10 +53,10 @@ public class TermUI implements UIHandler
 	{
 		// Get content for white and black captures
 		String[] captureContents = new String[] {"", ""};
-		for (byte piece: showState.capturesP0)
-			captureContents[0] += currentRules.getSymbol(piece) + " ";
-		for (byte piece: showState.capturesP1)
-			captureContents[1] += currentRules.getSymbol(piece) + " ";
+		for (int camp = 0; camp < 2; camp++)
+			for (byte piece = 1; piece < showState.hands[camp].length; piece++)
+				for (int i = 0; i < showState.hands[camp][piece]; i++)
+					captureContents[camp] += currentRules.getSymbol(piece) + " ";
 
 		// Print white capture box
 		printBox(captureContents[1], WHITE_CAPTURE, this);
@@ -62,7 +66,7 @@ public class TermUI implements UIHandler
 
 		// Get array of column number string sizes.
 		int lim_len = String.valueOf(BOARD_SIZE_LIM).length();
-		char[][] lenCharArray = new char[showState.boardArray[0].length][lim_len];
+		char[][] lenCharArray = new char[showState.position.width][lim_len];
 
 		// Fill array of column numbers.
 		for (int i = 0; i < lenCharArray.length; i++)
@@ -80,7 +84,7 @@ public class TermUI implements UIHandler
 		{
 			print(" ");
 			for (int j = 0; j < lim_len; j++) print(" ");
-			for (int j = 0; j < showState.boardArray[0].length; j++)
+			for (int j = 0; j < showState.position.width; j++)
 			{
 				String iStr = lenCharArray[j][i] + " ";
 				print(iStr);
@@ -89,10 +93,10 @@ public class TermUI implements UIHandler
 		}
 
 		// Loop board printing
-		for (int y = 0; y <= showState.boardArray.length; y++)
+		for (int y = 0; y <= showState.position.height; y++)
 		{
 			// Boolean to know if it loop should print another row.
-			boolean endReached = showState.boardArray.length <= y;
+			boolean endReached = showState.position.height <= y;
 
 			// Go to new line to print next row.
 			println("");
@@ -109,7 +113,7 @@ public class TermUI implements UIHandler
 				edge_right = GRID_UP_L;
 				mid = GRID_SD_U;
 			}
-			else if (y == showState.boardArray.length) // End of grid.
+			else if (y == showState.position.height) // End of grid.
 			{
 				edge_left = GRID_DN_R;
 				edge_right = GRID_DN_L;
@@ -118,10 +122,10 @@ public class TermUI implements UIHandler
 
 			// Print line for row.
 			print(edge_left + "");
-			for(int i = 0; i < showState.boardArray[0].length; i++)
+			for(int i = 0; i < showState.position.width; i++)
 			{
 				print(GRID_BR_LEFT + "");
-				if (i < showState.boardArray[0].length - 1) 
+				if (i < showState.position.width - 1) 
 					print(mid + "");
 				else print(edge_right + "");
 			}
@@ -138,9 +142,9 @@ public class TermUI implements UIHandler
 			}
 
 			// Print pieces of current row.
-			for (int x = 0; x < showState.boardArray[0].length && !endReached; x++)
+			for (int x = 0; x < showState.position.width && !endReached; x++)
 			{
-				byte[] pieceInfo = showState.boardArray[y][x]; // Get info for piece
+				byte[] pieceInfo = showState.position.getPiece(y, x); // Get info for piece
 				String showString = "";
 				char pieceChar = currentRules.getSymbol(pieceInfo[0]);
 
@@ -150,7 +154,7 @@ public class TermUI implements UIHandler
 					// Get piece color from faction
 					if (showState.stateMode == GameState.StateMode.MOVE_SELECT)
 					{
-						if (pieceInfo[2] > 0)
+						if (showState.selectBoard[y][x] > 0)
 							showString += ANSI_BG + RED + ANSI_FG + WHITE;
 						else if (pieceInfo[1] == 1)
 							showString += ANSI_BG + BLACK + ANSI_FG + WHITE;
@@ -168,7 +172,7 @@ public class TermUI implements UIHandler
 				// Move select phase --> color possible moves into empty spaces green.
 				else if (showState.stateMode == GameState.StateMode.MOVE_SELECT)
 				{
-					if (pieceInfo[2] != 0)
+					if (showState.selectBoard[y][x] != 0)
 						showString += ANSI_BG + GREEN + pieceChar 
 							+ ANSI_NORMAL_COL + ANSI_BG + YELLOW;
 					else showString += pieceChar;
@@ -194,11 +198,14 @@ public class TermUI implements UIHandler
 		println("");
 
 		// Print the print list.
-		for (String nextPrint : printList)
+		synchronized (PRINT_LOCK)
 		{
-			print(nextPrint);
+			for (String nextPrint : printList)
+			{
+				print(nextPrint);
+			}
+			printList = new ArrayList<>();
 		}
-		printList = new ArrayList<>();
 		println("");
 
 		// Prints user input if game hasn't ended.
@@ -254,9 +261,12 @@ public class TermUI implements UIHandler
 	@Override
 	public void reset()
 	{
-		while(flushSize > 0) {
-			System.out.print(ANSI_ERASE_LINE + ANSI_UP_INCREMENT);
-			flushSize--;
+		synchronized (PRINT_LOCK)
+		{
+			while(flushSize > 0) {
+				System.out.print(ANSI_ERASE_LINE + ANSI_UP_INCREMENT);
+				flushSize--;
+			}
 		}
 	}
 
@@ -268,7 +278,10 @@ public class TermUI implements UIHandler
 	public String getInputLine(Scanner inputScanner)
 	{
 		String inputLine = inputScanner.nextLine();
-		flushSize++;
+		synchronized (PRINT_LOCK)
+		{
+			flushSize++;
+		}
 		return inputLine;
 	}
 
@@ -279,17 +292,23 @@ public class TermUI implements UIHandler
 	@Override
 	public void println(String msg)
 	{
-		for(char msg_char : msg.toCharArray())
-			if (msg_char == '\n') flushSize++;
-		System.out.println(msg);
-		flushSize++;
+		synchronized (PRINT_LOCK)
+		{
+			for(char msg_char : msg.toCharArray())
+				if (msg_char == '\n') flushSize++;
+			System.out.println(msg);
+			flushSize++;
+		}
 	}
 
 	@Override
 	public void keepToPrintList (String msg)
 	{
 		// Add the message to the print list.
-		printList.add(msg);
+		synchronized (PRINT_LOCK)
+		{
+			printList.add(msg);
+		}
 	}
 
 	/**
@@ -299,8 +318,11 @@ public class TermUI implements UIHandler
 	@Override
 	public void print(String msg)
 	{
-		for(char msg_char : msg.toCharArray())
-			if (msg_char == '\n') flushSize++;
-		System.out.print(msg);
+		synchronized (PRINT_LOCK)
+		{
+			for(char msg_char : msg.toCharArray())
+				if (msg_char == '\n') flushSize++;
+			System.out.print(msg);
+		}
 	}
 }
@@ -0,0 +1,357 @@
+package LionShogi;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Class playing games between two bot settings of a variant on several threads, to compare
+ * them. The variant is parsed once and its rules and tablebases shared, while each thread has
+ * its own pair of bots, whose tables are cleared between games. Games are played in pairs from
+ * the same random opening, each bot playing both sides, and a game is drawn when a position
+ * repeats or it gets too long. Results are given for bot A. */
+public class Tournament
+{
+	// Word separating the settings of the two bots, and times a position repeats for a draw.
+	static final String VERSUS = "vs";
+	private static final int REPETITIONS = 3;
+
+	// Elo difference of a score ratio of 10, and normal quantile of the 95% error bars.
+	private static final double ELO_SCALE = 400;
+	private static final double ERROR_QUANTILE = 1.96;
+
+	// Variant file, parsed once for its rules, start and bot keys, and tablebases mapped by file.
+	String variantPath;
+	private LogicHandler mainHandler = new LogicHandler();
+	private HashMap<String, String> variantSettings = newSettings();
+	private HashMap<String, Tablebase> tablebases = new HashMap<>();
+
+	// Bot keys overriding each bot's, and settings of the games.
+	HashMap<String, String> settingsA = newSettings();
+	HashMap<String, String> settingsB = newSettings();
+	int threads = Runtime.getRuntime().availableProcessors();
+	int openingPlies = 4;
+	int maxPlies = 300;
+	long seed = 1006;
+
+	// Results for bot A, and nodes and search time of each bot.
+	int wins;
+	int draws;
+	int losses;
+	long[] nodes = new long[2];
+	long[] searchTimes = new long[2];
+
+	// Games between each summary printed, 0 for none.
+	int progressStep = 0;
+
+	// Pairs of bots A and B waiting for a game, one pair per thread.
+	ConcurrentLinkedQueue<ShogiBot[]> idleBots = new ConcurrentLinkedQueue<>();
+
+	/**
+	* Getter for empty bot keys, to override the keys of the variant's bot.
+	* @return the keys, as the bot object of a variant.
+	 */
+	public static HashMap<String, String> newSettings()
+	{
+		HashMap<String, String> settings = new HashMap<>();
+		settings.put("name", "bot");
+		return settings;
+	}
+
+	/**
+	* Getter for a bot of the variant, with the bot keys of the variant then the given ones.
+	* Its tablebase is shared with the other bots.
+	* @param settings the bot keys overriding the variant's.
+	* @return the bot.
+	 */
+	public ShogiBot newBot(HashMap<String, String> settings)
+	{
+		ShogiBot bot = new ShogiBot(mainHandler);
+		bot.onObject(variantSettings);
+		bot.onObject(settings);
+		if (bot.tablebasePath != null)
+		{
+			bot.tablebase = getTablebase(bot.tablebasePath);
+			bot.tablebasePath = null;
+		}
+		return bot;
+	}
+
+	/**
+	* Getter for a tablebase of the variant, mapped on first use.
+	* @param tablebasePath the path of the tablebase file.
+	* @return the tablebase, or null if the file is missing or does not match the variant.
+	 */
+	private synchronized Tablebase getTablebase(String tablebasePath)
+	{
+		if (!tablebases.containsKey(tablebasePath))
+		{
+			Tablebase tablebase = null;
+			if (new File(tablebasePath).exists())
+			{
+				tablebase = new Tablebase(mainHandler.shogiRules, mainHandler.currentState);
+				if (!tablebase.load(tablebasePath)) tablebase = null;
+			}
+			tablebases.put(tablebasePath, tablebase);
+		}
+		return tablebases.get(tablebasePath);
+	}
+
+	/**
+	* Getter for a pair of bots for a game - one left by an ended game, with its tables
+	* cleared, or a new one.
+	* @return the bots A and B.
+	 */
+	private ShogiBot[] takeBots()
+	{
+		ShogiBot[] bots = idleBots.poll();
+		if (bots == null) return new ShogiBot[] {newBot(settingsA), newBot(settingsB)};
+		for (ShogiBot bot : bots)
+		{
+			if (bot.transTable != null) bot.transTable.clear();
+			bot.stats = new SearchStats();
+		}
+		return bots;
+	}
+
+	/**
+	* Plays a game between bot A and bot B. Games 2n and 2n + 1 start from the same opening,
+	* with bot A playing black in the first and white in the second.
+	* @param game the number of the game.
+	* @return 1 if bot A won, -1 if it lost, 0 for a draw.
+	 */
+	public int playGame(int game)
+	{
+		ShogiBot[] bots = takeBots();
+		ShogiBot botA = bots[0];
+		ShogiBot botB = bots[1];
+		boolean blackA = game % 2 == 0;
+		GameState state = playOpening(botA, mainHandler.currentState, game / 2);
+
+		// Have each bot play its side until the game ends, repeats or gets too long.
+		HashMap<Long, Integer> repetitions = new HashMap<>();
+		byte victor = state.victor;
+		for (int ply = 0; ply < maxPlies && victor == 0; ply++)
+		{
+			ShogiBot mover = botB;
+			if (state.P0Turn == blackA) mover = botA;
+			GameState nextState = mover.chooseBestState(state);
+			if (nextState == state) // A side without moves loses.
+			{
+				victor = (byte) (3 - state.getTurnByte());
+				break;
+			}
+			state = nextState;
+			victor = state.victor;
+
+			long key = new SearchPosition(state, botA.getZobrist(state)).hashKey;
+			int seen = repetitions.getOrDefault(key, 0) + 1;
+			repetitions.put(key, seen);
+			if (seen >= REPETITIONS) break;
+		}
+
+		// Get the result for bot A.
+		int result = 0;
+		if (victor != 0 && (victor == 1) == blackA) result = 1;
+		else if (victor != 0) result = -1;
+		addResult(result, botA, botB);
+		idleBots.add(bots);
+		return result;
+	}
+
+	/**
+	* Plays the random opening moves of a pair of games, never ending the game.
+	* @param bot the bot giving the moves.
+	* @param state the start of the game.
+	* @param pair the number of the pair of games, seeding its opening.
+	* @return the game state after the opening.
+	 */
+	private GameState playOpening(ShogiBot bot, GameState state, int pair)
+	{
+		Random random = new Random(seed + pair);
+		for (int ply = 0; ply < openingPlies; ply++)
+		{
+			// Pick a move among those which do not end the game.
+			ArrayList<GameState> nextStates = new ArrayList<>();
+			for (GameState nextState : bot.getAllGameStates(state))
+				if (nextState.victor == 0) nextStates.add(nextState);
+			if (nextStates.isEmpty()) break;
+			state = nextStates.get(random.nextInt(nextStates.size()));
+		}
+		return state;
+	}
+
+	/**
+	* Adds the result of a game, and the search counts of its bots.
+	* @param result the result for bot A.
+	* @param botA the bot A of the game.
+	* @param botB the bot B of the game.
+	 */
+	private synchronized void addResult(int result, ShogiBot botA, ShogiBot botB)
+	{
+		if (result == 1) wins++;
+		else if (result == -1) losses++;
+		else draws++;
+		nodes[0] += botA.stats.getTotalNodes();
+		nodes[1] += botB.stats.getTotalNodes();
+		searchTimes[0] += botA.stats.getTotalTime();
+		searchTimes[1] += botB.stats.getTotalTime();
+		if (progressStep > 0 && getGames() % progressStep == 0)
+			System.out.println(getSummary());
+	}
+
+	/**
+	* Plays a number of games, split between threads.
+	* @param games the number of games.
+	 */
+	public void run(int games)
+	{
+		RecursiveAction[] tasks = new RecursiveAction[games];
+		for (int i = 0; i < games; i++)
+		{
+			final int game = i;
+			tasks[i] = new RecursiveAction()
+			{
+				@Override
+				protected void compute()
+				{
+					playGame(game);
+				}
+			};
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		pool.invoke(new RecursiveAction()
+		{
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
+		pool.shutdown();
+	}
+
+	/**
+	* Getter for the number of games played.
+	* @return the number of games.
+	 */
+	public synchronized int getGames()
+	{
+		return wins + draws + losses;
+	}
+
+	/**
+	* Getter for the score of bot A, a draw counting as half a win.
+	* @return the score, between 0 and 1.
+	 */
+	public synchronized double getScore()
+	{
+		if (getGames() == 0) return 0.5;
+		return (wins + draws / 2.0) / getGames();
+	}
+
+	/**
+	* Getter for the variance of the result of a game around the score.
+	* @return the variance of a game's result.
+	 */
+	public synchronized double getScoreVariance()
+	{
+		if (getGames() == 0) return 0;
+		double score = getScore();
+		return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+				+ losses * score * score) / getGames();
+	}
+
+	/**
+	* Getter for half the width of the 95% error bars of the score, from the spread of the
+	* game results around it.
+	* @return the error of the score.
+	 */
+	public synchronized double getScoreError()
+	{
+		if (getGames() < 2) return 0.5;
+		return ERROR_QUANTILE * Math.sqrt(getScoreVariance() / getGames());
+	}
+
+	/**
+	* Getter for the Elo difference of a score.
+	* @param score the score, between 0 and 1.
+	* @return the Elo difference, infinite for a score of 0 or 1.
+	 */
+	public static double toElo(double score)
+	{
+		if (score <= 0) return Double.NEGATIVE_INFINITY;
+		if (score >= 1) return Double.POSITIVE_INFINITY;
+		return -ELO_SCALE * Math.log10(1 / score - 1);
+	}
+
+	/**
+	* Getter for the expected score of an Elo difference.
+	* @param elo the Elo difference.
+	* @return the score, between 0 and 1.
+	 */
+	public static double toScore(double elo)
+	{
+		return 1 / (1 + Math.pow(10, -elo / ELO_SCALE));
+	}
+
+	/**
+	* Getter for the Elo difference of bot A over bot B.
+	* @return the Elo difference.
+	 */
+	public double getElo()
+	{
+		return toElo(getScore());
+	}
+
+	/**
+	* Getter for half the width of the 95% error bars of the Elo difference.
+	* @return the error of the Elo difference.
+	 */
+	public synchronized double getEloError()
+	{
+		double score = getScore();
+		double error = getScoreError();
+		return (toElo(score + error) - toElo(score - error)) / 2;
+	}
+
+	/**
+	* Getter for a bot's speed over all its searches.
+	* @param bot 0 for bot A, 1 for bot B.
+	* @return the number of nodes per second.
+	 */
+	public synchronized long getNodesPerSecond(int bot)
+	{
+		return nodes[bot] * 1000 / Math.max(1, searchTimes[bot]);
+	}
+
+	/**
+	* Getter for a summary of the results.
+	* @return the summary.
+	 */
+	public synchronized String getSummary()
+	{
+		return String.format("Games: %d, bot A wins %d, draws %d, losses %d. Score %.1f%%, "
+				+ "Elo %+.1f +/- %.1f. Nodes/s: bot A %d, bot B %d", getGames(), wins, draws,
+				losses, getScore() * 100, getElo(), getEloError(), getNodesPerSecond(0),
+				getNodesPerSecond(1));
+	}
+
+	/**
+	* Constructor for a tournament.
+	* @param variantPath the path of the variant file, with the default bot keys.
+	 */
+	public Tournament(String variantPath)
+	{
+		this.variantPath = variantPath;
+
+		// Parse the variant, keeping the keys of its bot.
+		mainHandler.loadVariant(variantPath, currentObject ->
+		{
+			if (currentObject.get("name").equals("bot")) variantSettings.putAll(currentObject);
+		});
+	}
+}
@@ -0,0 +1,118 @@
+package LionShogi;
+
+import java.util.Arrays;
+
+/** Class for a fixed size table of searched positions, indexed by their hash key.
+ * Search threads share it without locks: each entry's key is stored XORed with its data,
+ * so an entry mixing the key and data of two different writes fails the key check. */
+public class TranspositionTable
+{
+	// Kinds of bound a stored score is - 0 is kept for empty entries.
+	static final int BOUND_EXACT = 1;
+	static final int BOUND_LOWER = 2;
+	static final int BOUND_UPPER = 3;
+
+	// Bit layout of an entry's data: move, score, depth then bound.
+	private static final int SCORE_SHIFT = 32;
+	private static final int DEPTH_SHIFT = 48;
+	private static final int BOUND_SHIFT = 56;
+
+	// Entries of the table - key and packed data for each.
+	private long[] keys;
+	private long[] data;
+	private int indexMask;
+
+	/**
+	* Getter for the data stored for a position.
+	* @param key the hash key of the position.
+	* @return the packed data of the entry, or 0 if the position is not stored.
+	 */
+	public long probe(long key)
+	{
+		int index = (int) key & indexMask;
+		long entry = data[index];
+		if ((keys[index] ^ entry) == key) return entry;
+		else return 0;
+	}
+
+	/**
+	* Stores the result of a search on a position, unless a deeper search of it is stored.
+	* @param key the hash key of the position.
+	* @param depth the depth the position was searched to.
+	* @param bound the kind of bound the score is.
+	* @param score the score of the position.
+	* @param move the best move found in the position.
+	 */
+	public void store(long key, int depth, int bound, int score, int move)
+	{
+		int index = (int) key & indexMask;
+		long oldEntry = data[index];
+		if ((keys[index] ^ oldEntry) == key && getDepth(oldEntry) > depth) return;
+
+		long entry = (move & 0xFFFFFFFFL)
+			| ((score & 0xFFFFL) << SCORE_SHIFT)
+			| ((long) (depth & 0xFF) << DEPTH_SHIFT)
+			| ((long) bound << BOUND_SHIFT);
+		keys[index] = key ^ entry;
+		data[index] = entry;
+	}
+
+	/** Empties the table - only called between searches. */
+	public void clear()
+	{
+		Arrays.fill(keys, 0);
+		Arrays.fill(data, 0);
+	}
+
+	/**
+	* Getter for the best move of an entry.
+	* @param entry the packed data of the entry.
+	* @return the encoded move.
+	 */
+	public static int getMove(long entry)
+	{
+		return (int) entry;
+	}
+
+	/**
+	* Getter for the score of an entry.
+	* @param entry the packed data of the entry.
+	* @return the score.
+	 */
+	public static int getScore(long entry)
+	{
+		return (short) (entry >>> SCORE_SHIFT);
+	}
+
+	/**
+	* Getter for the depth of an entry.
+	* @param entry the packed data of the entry.
+	* @return the depth the position was searched to.
+	 */
+	public static int getDepth(long entry)
+	{
+		return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/**
+	* Getter for the bound kind of an entry.
+	* @param entry the packed data of the entry.
+	* @return the bound kind, or 0 if the entry is empty.
+	 */
+	public static int getBound(long entry)
+	{
+		return (int) (entry >>> BOUND_SHIFT) & 0x3;
+	}
+
+	/**
+	* Constructor for a transposition table.
+	* @param size the number of entries, rounded down to a power of two.
+	 */
+	public TranspositionTable(int size)
+	{
+		int entries = Integer.highestOneBit(Math.max(size, 1));
+		keys = new long[entries];
+		data = new long[entries];
+		indexMask = entries - 1;
+	}
+}
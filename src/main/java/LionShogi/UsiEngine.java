@@ -0,0 +1,315 @@
+package LionShogi;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/** Class driving the bot through a line-based protocol like USI on the standard streams,
+ * for GUIs and analysis tools: no board is shown and nothing is asked. Moves are written as
+ * the game's commands, y-x,y-x for board moves and c[index]->y-x for drops, with the index
+ * of the piece in the hand as displayed, from 1. Protocol lines go to the output stream,
+ * while errors go to the error stream. */
+public class UsiEngine
+{
+	// Commands and words of the protocol.
+	private static final String QUIT = "quit";
+	private static final String START_POSITION = "startpos";
+	private static final String MOVES = "moves";
+	private static final String RESIGN = "resign";
+	private static final String DROP_RX = "c[0-9]{1,4}->[0-9]+-[0-9]+";
+
+	// Deepest layer searched when only time or stop ends the search, and time between polls.
+	private static final int MAX_LAYER = 64;
+	private static final int INPUT_POLL_TIME = 50;
+
+	// Game and bot of the engine, and the position to search.
+	LogicHandler mainHandler;
+	ShogiBot bot;
+	GameState state;
+	PrintStream output = System.out;
+
+	// Running search, the position it searches, whether only stop ends it, and the bot's
+	// settings to restore after it.
+	private Future<Integer> search;
+	private GameState searchState;
+	private boolean infinite;
+	private int baseLayer;
+	private int moveTime;
+
+	/**
+	* Reads commands until quit or the end of input, ending searches as they finish.
+	* @param input the scanner to get commands from.
+	 */
+	public void run(Scanner input)
+	{
+		// Read commands on their own thread, so that searches can end while waiting.
+		BlockingQueue<String> commands = new LinkedBlockingQueue<>();
+		Thread reader = new Thread(() ->
+		{
+			while (input.hasNextLine()) commands.add(input.nextLine().trim());
+			commands.add(QUIT);
+		}, "input");
+		reader.setDaemon(true);
+		reader.start();
+
+		try
+		{
+			while (true)
+			{
+				String command = commands.poll(INPUT_POLL_TIME, TimeUnit.MILLISECONDS);
+				// An infinite search's move waits for stop, even if the search ended first.
+				if (search != null && search.isDone() && !infinite) finishSearch();
+				if (command != null && !processCommand(command)) return;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("ERROR: Engine interrupted.");
+		}
+	}
+
+	/**
+	* Processes a command of the protocol.
+	* @param command the line of the command.
+	* @return false once the engine should quit, else true.
+	 */
+	public boolean processCommand(String command)
+	{
+		String[] words = command.split("\\s+");
+		switch (words[0])
+		{
+			case "usi":
+				output.println("id name LionShogi");
+				output.println("usiok");
+				break;
+			case "isready":
+				output.println("readyok");
+				break;
+			case "usinewgame":
+				if (search == null && bot.transTable != null) bot.transTable.clear();
+				break;
+			case "setoption":
+				setOption(words);
+				break;
+			case "position":
+				setPosition(words);
+				break;
+			case "go":
+				go(words);
+				break;
+			case "stop":
+				if (search != null)
+				{
+					bot.moveNow();
+					finishSearch();
+				}
+				break;
+			case QUIT:
+				if (search != null)
+				{
+					bot.moveNow();
+					finishSearch();
+				}
+				return false;
+			case "":
+				break;
+			default:
+				System.err.println("ERROR: Unknown command " + command);
+		}
+		return true;
+	}
+
+	/**
+	* Sets a bot key, as setoption name [key] value [value].
+	* @param words the words of the command.
+	 */
+	private void setOption(String[] words)
+	{
+		if (search != null)
+			System.err.println("ERROR: Cannot set an option while searching.");
+		else if (words.length < 5 || !words[1].equals("name") || !words[3].equals("value"))
+			System.err.println("ERROR: Expected setoption name [key] value [value].");
+		else
+		{
+			HashMap<String, String> settings = Tournament.newSettings();
+			settings.put(words[2], words[4]);
+			bot.onObject(settings);
+		}
+	}
+
+	/**
+	* Sets the position to search, as position startpos [moves [move...]]. On an illegal move,
+	* the position is left as it was.
+	* @param words the words of the command.
+	 */
+	private void setPosition(String[] words)
+	{
+		if (search != null)
+		{
+			System.err.println("ERROR: Cannot set the position while searching.");
+			return;
+		}
+		if (words.length < 2 || !words[1].equals(START_POSITION)
+				|| (words.length > 2 && !words[2].equals(MOVES)))
+		{
+			System.err.println("ERROR: Expected position startpos [moves [move...]].");
+			return;
+		}
+
+		// Play the moves from the start position.
+		GameState newState = mainHandler.loadInitialGameState();
+		for (int i = 3; i < words.length; i++)
+		{
+			int move = parseMove(newState, words[i]);
+			if (move == 0 || newState.victor != 0)
+			{
+				System.err.println("ERROR: Illegal move " + words[i]);
+				return;
+			}
+			newState = ShogiMove.applyTo(newState, move);
+		}
+		state = newState;
+	}
+
+	/**
+	* Getter for the move of a game state written as a command.
+	* @param baseState the game state to play the move on.
+	* @param command the move, as a user command string.
+	* @return the encoded move, or 0 if it is not a move of the game state.
+	 */
+	public int parseMove(GameState baseState, String command)
+	{
+		// Any index of a type in the hand drops it, as in the game - write the first one.
+		byte side = baseState.getTurnByte();
+		if (command.matches(DROP_RX))
+		{
+			String[] dropWords = command.substring(1).split("->");
+			byte type = baseState.getHandPiece(side, Integer.valueOf(dropWords[0]) - 1);
+			if (type == 0) return 0;
+			command = "c" + ShogiMove.getHandIndex(baseState, type) + "->" + dropWords[1];
+		}
+
+		MoveList moves = new MoveList(64);
+		bot.moveGenerator.generateMoves(baseState.position, side, baseState.hands[side - 1], moves);
+		for (int i = 0; i < moves.size; i++)
+			if (ShogiMove.toCommand(baseState, moves.moves[i]).equals(command))
+				return moves.moves[i];
+		return 0;
+	}
+
+	/**
+	* Starts searching the position, as go [movetime [ms]] [depth [layers]] [infinite]. Without
+	* limits, the bot's own layers and move time are used. The move of an infinite search is
+	* only written after stop.
+	* @param words the words of the command.
+	 */
+	private void go(String[] words)
+	{
+		if (search != null)
+		{
+			System.err.println("ERROR: Already searching.");
+			return;
+		}
+
+		// Read the limits of the search, over the bot's settings.
+		baseLayer = bot.baseLayer;
+		moveTime = bot.moveTime;
+		infinite = false;
+		for (int i = 1; i < words.length; i++)
+		{
+			if (words[i].equals("infinite"))
+			{
+				bot.baseLayer = MAX_LAYER;
+				bot.moveTime = 0;
+				infinite = true;
+			}
+			else if (words[i].equals("movetime") && i + 1 < words.length
+					&& words[i + 1].matches("[1-9][0-9]*"))
+			{
+				bot.moveTime = Integer.valueOf(words[++i]);
+				if (bot.baseLayer == baseLayer) bot.baseLayer = MAX_LAYER;
+			}
+			else if (words[i].equals("depth") && i + 1 < words.length
+					&& words[i + 1].matches("[1-9][0-9]*"))
+			{
+				bot.baseLayer = Math.min(MAX_LAYER, Integer.valueOf(words[++i])) - 1;
+				if (bot.moveTime == moveTime) bot.moveTime = 0;
+			}
+			else System.err.println("ERROR: Ignored go argument " + words[i]);
+		}
+
+		// A finished game has no move to search.
+		searchState = state;
+		if (state.victor != 0)
+		{
+			System.err.println("ERROR: The game is over.");
+			restoreSettings();
+			output.println("bestmove " + RESIGN);
+			return;
+		}
+		search = bot.startMoveSearch(state);
+	}
+
+	/**
+	* Waits for the running search to end, and writes its move.
+	 */
+	public void finishSearch()
+	{
+		int move = 0;
+		try
+		{
+			move = search.get();
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			System.err.println("ERROR: Search failed: " + e.getMessage());
+		}
+		search = null;
+		infinite = false;
+		restoreSettings();
+		if (move == 0) output.println("bestmove " + RESIGN);
+		else output.println("bestmove " + ShogiMove.toCommand(searchState, move));
+	}
+
+	/** Restores the bot's layers and move time after a search with limits of its own. */
+	private void restoreSettings()
+	{
+		bot.baseLayer = baseLayer;
+		bot.moveTime = moveTime;
+	}
+
+	/**
+	* Writes a layer finished by the search, as info depth [layers] score cp [score] nodes [n]
+	* time [ms] nps [n] pv [move].
+	* @param layer the layer finished.
+	* @param score the search's value of the best move, as the material the bot gains.
+	* @param nodes the number of nodes searched so far.
+	* @param time the time since the search started in milliseconds.
+	* @param move the encoded best move of the layer.
+	 */
+	private void writeInfo(int layer, int score, long nodes, long time, int move)
+	{
+		output.println("info depth " + (layer + 1) + " score cp " + score + " nodes " + nodes
+				+ " time " + time + " nps " + nodes * 1000 / Math.max(1, time) + " pv "
+				+ ShogiMove.toCommand(searchState, move));
+	}
+
+	/**
+	* Constructor for an engine, loading a variant and its bot. Pondering is left to the GUI.
+	* @param variantPath the path of the variant file.
+	 */
+	public UsiEngine(String variantPath)
+	{
+		mainHandler = new LogicHandler();
+		bot = new ShogiBot(mainHandler);
+		mainHandler.loadVariant(variantPath, bot);
+		bot.ponder = false;
+		bot.listener = this::writeInfo;
+		state = mainHandler.currentState;
+	}
+}
@@ -0,0 +1,89 @@
+package LionShogi;
+
+import java.util.Random;
+
+/** Class holding the random keys used to hash search positions. */
+public class Zobrist
+{
+	// Seed of the key generator, so that hashes are the same on every run.
+	private static final long SEED = 0x5EED5140L;
+
+	// Dimensions the keys were generated for.
+	final int squares;
+	final int pieceTypes;
+	final int maxHand;
+
+	// Keys for pieces on squares, counts of pieces in hand, and the side to move.
+	private long[] pieceKeys;
+	private long[] handKeys;
+	long sideKey;
+
+	/**
+	* Getter for the key of a piece on a square.
+	* @param type the type of the piece.
+	* @param camp the camp of the piece.
+	* @param square the square of the piece.
+	* @return the key for that piece.
+	 */
+	public long getPieceKey(byte type, byte camp, int square)
+	{
+		return pieceKeys[((camp - 1) * pieceTypes + type) * squares + square];
+	}
+
+	/**
+	* Getter for the key of a count of pieces of a type in a camp's hand.
+	* @param type the type of the pieces.
+	* @param camp the camp holding the pieces.
+	* @param count the number of pieces held.
+	* @return the key for that count.
+	 */
+	public long getHandKey(byte type, byte camp, int count)
+	{
+		return handKeys[((camp - 1) * pieceTypes + type) * (maxHand + 1) + count];
+	}
+
+	/**
+	* Computes the full hash of a search position.
+	* @param searchPos the search position to hash.
+	* @return the hash key.
+	 */
+	public long hash(SearchPosition searchPos)
+	{
+		long key = 0;
+		Position board = searchPos.board;
+
+		// Hash pieces on the board.
+		for (int square = 0; square < board.squares; square++)
+			if (board.getCamp(square) != 0)
+				key ^= getPieceKey(board.getType(square), board.getCamp(square), square);
+
+		// Hash counts of pieces in hand.
+		for (byte camp = 1; camp <= 2; camp++)
+			for (byte type = 1; type < pieceTypes; type++)
+				key ^= getHandKey(type, camp, searchPos.hands[camp - 1][type]);
+
+		// Hash side to move.
+		if (!searchPos.P0Turn) key ^= sideKey;
+		return key;
+	}
+
+	/**
+	* Constructor for the keys of a board.
+	* @param squares the number of squares on the board.
+	* @param pieceTypes the number of piece types, including the empty type 0.
+	 */
+	public Zobrist(int squares, int pieceTypes)
+	{
+		this.squares = squares;
+		this.pieceTypes = pieceTypes;
+		this.maxHand = squares; // A camp can't hold more pieces than fit on the board.
+
+		// Generate all keys from the same seed.
+		Random keyMaker = new Random(SEED);
+		pieceKeys = new long[2 * pieceTypes * squares];
+		for (int i = 0; i < pieceKeys.length; i++) pieceKeys[i] = keyMaker.nextLong();
+		handKeys = new long[2 * pieceTypes * (maxHand + 1)];
+		for (int i = 0; i < handKeys.length; i++) handKeys[i] = keyMaker.nextLong();
+		sideKey = keyMaker.nextLong();
+	}
+}
@@ -0,0 +1,69 @@
+package LionShogi;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for the game rules of a variant. */
+public class GameRulesTest
+{
+	/**
+	* Getter for the object of a piece moving one step in every direction, as parsed from a
+	* variant file.
+	* @param pieceKey the key of the piece.
+	* @param value the value of the piece, or null for none.
+	* @return the piece object.
+	 */
+	private HashMap<String, String> getPiece(int pieceKey, String value)
+	{
+		HashMap<String, String> piece = new HashMap<>();
+		piece.put("name", "pieces");
+		piece.put("byteKey", String.valueOf(pieceKey));
+		piece.put("char_0", String.valueOf(pieceKey));
+		piece.put("char_1", String.valueOf((char) ('a' + pieceKey - 1)));
+		piece.put("show", "P");
+		piece.put("placement_iter", "3");
+		piece.put("placement_0", "XXX");
+		piece.put("placement_1", "XOX");
+		piece.put("placement_2", "XXX");
+		if (value != null) piece.put("value", value);
+		return piece;
+	}
+
+	@Test public void testPieceWithoutValue()
+	{
+		// A variant where every piece has a value is accepted.
+		GameRules shogiRules = new GameRules();
+		shogiRules.onObject(getPiece(1, "1000"));
+		shogiRules.onObject(getPiece(2, "4"));
+		shogiRules.compileMoveTables(3, 3);
+		assertEquals(0, shogiRules.getPieceWithoutValue());
+
+		// A piece without value is found.
+		shogiRules = new GameRules();
+		shogiRules.onObject(getPiece(1, "1000"));
+		shogiRules.onObject(getPiece(2, null));
+		shogiRules.compileMoveTables(3, 3);
+		assertEquals(2, shogiRules.getPieceWithoutValue());
+
+		// So is a promotion to a piece without value.
+		shogiRules = new GameRules();
+		HashMap<String, String> promoting = getPiece(2, "1");
+		promoting.put("promotion", "3");
+		shogiRules.onObject(getPiece(1, "1000"));
+		shogiRules.onObject(promoting);
+		shogiRules.compileMoveTables(3, 3);
+		assertEquals(3, shogiRules.getPieceWithoutValue());
+	}
+
+	@Test public void testVariantsHaveValues()
+	{
+		for (String variantPath : new String[] {StartShogi.LION_PATH, StartShogi.MODERN_PATH})
+		{
+			LogicHandler mainHandler = new LogicHandler();
+			mainHandler.loadVariant(variantPath, null);
+			assertEquals(0, mainHandler.shogiRules.getPieceWithoutValue());
+		}
+	}
+}
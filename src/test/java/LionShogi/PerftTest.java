@@ -0,0 +1,48 @@
+package LionShogi;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for move generation, through the number of positions at each depth. */
+public class PerftTest
+{
+	/**
+	* Getter for a perft counter of a variant.
+	* @param variantPath the path of the variant file.
+	* @return the perft counter, with the variant loaded.
+	 */
+	private Perft getPerft(String variantPath)
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		ShogiBot mainBot = new ShogiBot(mainHandler);
+		mainHandler.loadVariant(variantPath, mainBot);
+		return new Perft(mainBot);
+	}
+
+	@Test public void testKnownCounts()
+	{
+		long[] lionCounts = new long[] {4, 17, 123, 976, 8122, 72004};
+		Perft perft = getPerft(StartShogi.LION_PATH);
+		GameState state = perft.mainBot.mainHandler.currentState;
+		for (int depth = 1; depth <= lionCounts.length; depth++)
+			assertEquals("Lion depth " + depth, lionCounts[depth - 1], perft.run(state, depth));
+
+		long[] modernCounts = new long[] {30, 900, 25440};
+		perft = getPerft(StartShogi.MODERN_PATH);
+		state = perft.mainBot.mainHandler.currentState;
+		for (int depth = 1; depth <= modernCounts.length; depth++)
+			assertEquals("Modern depth " + depth, modernCounts[depth - 1], perft.run(state, depth));
+	}
+
+	@Test public void testStatesAndThreadsMatch()
+	{
+		Perft perft = getPerft(StartShogi.LION_PATH);
+		GameState state = perft.mainBot.mainHandler.currentState;
+		long nodes = perft.run(state, 5);
+		perft.states = true;
+		assertEquals(nodes, perft.run(state, 5));
+		perft.states = false;
+		perft.threads = 4;
+		assertEquals(nodes, perft.run(state, 5));
+	}
+}
@@ -0,0 +1,225 @@
+package LionShogi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for the shogi bot's search. */
+public class ShogiBotTest
+{
+	/**
+	* Getter for a bot searching to a fixed layer, without table nor time budget.
+	* @param mainHandler the logic handler the bot plays for.
+	* @param layer the layer to search to.
+	* @param threads the number of threads of the search.
+	* @return the bot.
+	 */
+	private ShogiBot getFixedBot(LogicHandler mainHandler, int layer, int threads)
+	{
+		ShogiBot bot = new ShogiBot(mainHandler);
+		bot.baseLayer = layer;
+		bot.tableSize = 0;
+		bot.moveTime = 0;
+		bot.threads = threads;
+		return bot;
+	}
+
+	@Test public void testParallelRootMatchesSerial()
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(StartShogi.LION_PATH, null);
+		ShogiBot serialBot = getFixedBot(mainHandler, 4, 1);
+		ShogiBot parallelBot = getFixedBot(mainHandler, 4, 4);
+		ShogiBot windowBot = getFixedBot(mainHandler, 4, 1);
+		ShogiBot parallelWindowBot = getFixedBot(mainHandler, 4, 4);
+		windowBot.aspiration = 1;
+		parallelWindowBot.aspiration = 1;
+
+		// Compare chosen moves along a game played by the serial bot, with and without windows.
+		GameState state = mainHandler.currentState;
+		for (int round = 0; round < 12 && state.victor == 0; round++)
+		{
+			int serialMove = serialBot.chooseBestMove(state);
+			assertEquals("Round " + round, serialMove, parallelBot.chooseBestMove(state));
+			assertEquals(serialBot.rootScore, parallelBot.rootScore);
+			assertEquals("Round " + round, windowBot.chooseBestMove(state),
+					parallelWindowBot.chooseBestMove(state));
+			assertEquals(windowBot.rootScore, parallelWindowBot.rootScore);
+			state = ShogiMove.applyTo(state, serialMove);
+		}
+	}
+
+	@Test public void testHashMoveGeneratesNothing()
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(StartShogi.LION_PATH, null);
+		ShogiBot bot = getFixedBot(mainHandler, 1, 1);
+		GameState state = mainHandler.currentState;
+		SearchPosition searchPos = new SearchPosition(state, bot.getZobrist(state));
+		int[] moves = bot.getAllMoves(searchPos);
+		int hashMove = moves[moves.length - 1];
+
+		// A cutoff on the hash move stops before any stage is generated.
+		MovePicker picker = new MovePicker(bot.moveGenerator, bot.ordering);
+		picker.init(searchPos, hashMove, 0, false);
+		assertEquals(hashMove, picker.nextMove());
+		assertEquals(0, picker.generations);
+
+		// Picking on gives every other move once.
+		int picked = 1;
+		for (int move = picker.nextMove(); move != 0; move = picker.nextMove())
+		{
+			assertTrue(move != hashMove);
+			picked++;
+		}
+		assertEquals(moves.length, picked);
+		assertTrue(picker.generations > 0);
+	}
+
+	@Test public void testPvsMatchesAlphaBeta()
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(StartShogi.LION_PATH, null);
+		ShogiBot alphaBetaBot = getFixedBot(mainHandler, 4, 1);
+		ShogiBot pvsBot = getFixedBot(mainHandler, 4, 1);
+		pvsBot.pvs = true;
+		pvsBot.aspiration = 2;
+
+		// Compare chosen moves along a game played by the alpha-beta bot.
+		GameState state = mainHandler.currentState;
+		for (int round = 0; round < 12 && state.victor == 0; round++)
+		{
+			int alphaBetaMove = alphaBetaBot.chooseBestMove(state);
+			assertEquals("Round " + round, alphaBetaMove, pvsBot.chooseBestMove(state));
+			assertEquals(alphaBetaBot.rootScore, pvsBot.rootScore);
+			state = ShogiMove.applyTo(state, alphaBetaMove);
+		}
+	}
+
+	@Test public void testSearchStats()
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(StartShogi.LION_PATH, null);
+		ShogiBot bot = getFixedBot(mainHandler, 4, 1);
+		bot.tableSize = 1 << 16;
+
+		// Each search records its counts, and the totals add them up.
+		GameState state = mainHandler.currentState;
+		long totalNodes = 0;
+		for (int round = 0; round < 4 && state.victor == 0; round++)
+		{
+			state = bot.chooseBestState(state);
+			SearchStats stats = bot.stats;
+			totalNodes += stats.getNodes();
+			assertEquals(5, stats.getLayerTimes().length);
+			assertTrue(stats.getLeafEvals() > 0 && stats.getLeafEvals() <= stats.getNodes());
+			assertTrue(stats.getBetaCutoffs() > 0 && stats.getBetaCutoffs() < stats.getNodes());
+			assertTrue(stats.getFirstMoveCutoffRate() > 0 && stats.getFirstMoveCutoffRate() <= 1);
+			assertTrue(stats.getTableHits() > 0);
+		}
+		assertEquals(4, bot.stats.getSearches());
+		assertEquals(totalNodes, bot.stats.getTotalNodes());
+	}
+
+	@Test public void testFlightRecorderEvents() throws IOException
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(StartShogi.LION_PATH, null);
+		ShogiBot bot = getFixedBot(mainHandler, 4, 1);
+
+		// Record a bot move.
+		File recordingFile = File.createTempFile("botMove", ".jfr");
+		recordingFile.deleteOnExit();
+		Recording recording = new Recording();
+		recording.enable(BotMoveEvent.class);
+		recording.enable(SearchIterationEvent.class);
+		recording.start();
+		bot.chooseBestState(mainHandler.currentState);
+		recording.stop();
+		recording.dump(recordingFile.toPath());
+		recording.close();
+
+		// There is one event for the move, and one for each layer searched before it.
+		int moves = 0;
+		int iterations = 0;
+		for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath()))
+		{
+			if (event.getEventType().getName().equals("LionShogi.BotMove"))
+			{
+				moves++;
+				assertEquals(4, event.getInt("layer"));
+				assertEquals(bot.nodeCount, event.getLong("nodes"));
+				assertEquals(bot.rootScore, event.getInt("score"));
+			}
+			else if (event.getEventType().getName().equals("LionShogi.SearchIteration"))
+			{
+				assertEquals(iterations++, event.getInt("layer"));
+				assertFalse(event.getBoolean("aborted"));
+			}
+		}
+		assertEquals(1, moves);
+		assertEquals(5, iterations);
+	}
+
+	@Test public void testPonder()
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(StartShogi.LION_PATH, null);
+		ShogiBot ponderBot = getFixedBot(mainHandler, 4, 1);
+		ShogiBot bot = getFixedBot(mainHandler, 4, 1);
+		ponderBot.tableSize = 1 << 16;
+		bot.tableSize = 1 << 16;
+		ponderBot.ponder = true;
+
+		// When the predicted reply is played, the pondering bot plays the move searched for it.
+		GameState state = mainHandler.currentState;
+		int move = bot.chooseBestMove(state);
+		assertEquals(move, ponderBot.chooseBestMove(state));
+		state = ShogiMove.applyTo(state, move);
+		ponderBot.startPonder(state);
+		SearchPosition searchPos = new SearchPosition(state, ponderBot.zobrist);
+		int predictedMove = TranspositionTable.getMove(ponderBot.transTable.probe(searchPos.hashKey));
+		assertTrue(predictedMove != 0);
+		state = ShogiMove.applyTo(state, predictedMove);
+		move = bot.chooseBestMove(state);
+		assertEquals(move, ponderBot.chooseBestMove(state));
+
+		// Any other reply stops pondering, and the bot searches it.
+		state = ShogiMove.applyTo(state, move);
+		ponderBot.startPonder(state);
+		searchPos = new SearchPosition(state, ponderBot.zobrist);
+		predictedMove = TranspositionTable.getMove(ponderBot.transTable.probe(searchPos.hashKey));
+		int[] replies = ponderBot.getAllMoves(searchPos);
+		int reply = replies[0];
+		if (reply == predictedMove) reply = replies[1];
+		state = ShogiMove.applyTo(state, reply);
+		move = ponderBot.chooseBestMove(state);
+		assertTrue(move != 0);
+		assertEquals(4, ponderBot.completedLayer);
+	}
+
+	@Test public void testMoveNow() throws Exception
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(StartShogi.MODERN_PATH, null);
+		ShogiBot bot = getFixedBot(mainHandler, 30, 1);
+
+		// A search too deep to finish plays the move of its last layer once asked to.
+		GameState state = mainHandler.currentState;
+		Future<GameState> search = bot.startSearch(state);
+		Thread.sleep(200);
+		assertFalse(search.isDone());
+		bot.moveNow();
+		GameState chosenState = search.get(5, TimeUnit.SECONDS);
+		assertTrue(chosenState != state);
+		assertTrue(bot.completedLayer >= 0 && bot.completedLayer < 30);
+	}
+}
@@ -0,0 +1,37 @@
+package LionShogi;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for sequential probability ratio tests between bots. */
+public class SprtTest
+{
+	@Test public void testLlr()
+	{
+		// An even score favours the null hypothesis, a winning one the alternative.
+		assertTrue(Sprt.getLlr(100, 0.5, 0.1, 0, 10) < 0);
+		assertTrue(Sprt.getLlr(100, 0.6, 0.1, 0, 10) > 0);
+		assertEquals(2 * Sprt.getLlr(100, 0.6, 0.1, 0, 10), Sprt.getLlr(200, 0.6, 0.1, 0, 10), 1e-9);
+		assertEquals(0, Sprt.getLlr(10, 0.5, 0, 0, 10), 1e-9);
+		assertEquals(0.5, Tournament.toScore(0), 1e-9);
+		assertEquals(0.75, Tournament.toScore(Tournament.toElo(0.75)), 1e-9);
+	}
+
+	@Test public void testStronger()
+	{
+		// A bot searching more layers is accepted as stronger.
+		Tournament tournament = new Tournament(StartShogi.LION_PATH);
+		tournament.threads = 2;
+		tournament.settingsA.put("layers", "3");
+		tournament.settingsA.put("move_time", "0");
+		tournament.settingsB.put("layers", "1");
+		tournament.settingsB.put("move_time", "0");
+		Sprt sprt = new Sprt(tournament, 0, 50);
+		sprt.maxGames = 1000;
+		assertEquals(Sprt.ACCEPTED, sprt.run());
+
+		// Games running when the bound was reached are counted after it, and may lower the ratio.
+		assertTrue(sprt.getLlr() > 0);
+		assertTrue(tournament.getGames() < sprt.maxGames);
+	}
+}
@@ -0,0 +1,130 @@
+package LionShogi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for the tablebase, on a 2x3 variant small enough to solve in a test. */
+public class TablebaseTest
+{
+	// Lions, giraffes and chicks of lion shogi on a 2x3 board.
+	private static final String SMALL_VARIANT = "{\"title\" : \"Small Lion Shogi\","
+		+ "\"board\" : {\"width\" : 2, \"height\" : 3, \"placement\" : [\"ac\", \"d4\", \"31\"]},"
+		+ "\"pieces\" : ["
+		+ "{\"char_0\" : \"1\", \"char_1\" : \"a\", \"byteKey\" : 1, \"value\" : 1000, \"show\" : \"L\","
+		+ "\"piece_name\" : \"lion\", \"placement\" : [\"XXX\", \"XOX\", \"XXX\"]},"
+		+ "{\"char_0\" : \"3\", \"char_1\" : \"c\", \"byteKey\" : 3, \"value\" : 4, \"show\" : \"G\","
+		+ "\"piece_name\" : \"giraffe\", \"placement\" : [\"X-X\", \"-O-\", \"X-X\"]},"
+		+ "{\"char_0\" : \"4\", \"char_1\" : \"d\", \"byteKey\" : 4, \"value\" : 1, \"show\" : \"C\","
+		+ "\"piece_name\" : \"chick\", \"promotion\" : 5, \"placement\" : [\"-X-\", \"-O-\", \"---\"]},"
+		+ "{\"char_0\" : \"5\", \"char_1\" : \"e\", \"byteKey\" : 5, \"value\" : 5, \"show\" : \"R\","
+		+ "\"piece_name\" : \"rooster\", \"demote\" : 4, \"placement\" : [\"XXX\", \"XOX\", \"-X-\"]}]}";
+
+	/**
+	* Writes the small variant to a temporary file.
+	* @return the path of the file.
+	 */
+	private String writeSmallVariant() throws IOException
+	{
+		File variantFile = File.createTempFile("smallShogi", ".json");
+		variantFile.deleteOnExit();
+		Files.write(variantFile.toPath(), SMALL_VARIANT.getBytes());
+		return variantFile.getPath();
+	}
+
+	@Test public void testIndexRoundTrip() throws IOException
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(writeSmallVariant(), null);
+		Tablebase tablebase = new Tablebase(mainHandler.shogiRules, mainHandler.currentState);
+		assertEquals(72990, tablebase.positions);
+
+		// Each index gives a position which gives the index back.
+		byte[] types = new byte[tablebase.squares];
+		byte[] camps = new byte[tablebase.squares];
+		int[][] hands = new int[2][tablebase.pieceTypes];
+		long[] scratch = new long[tablebase.getScratchSize()];
+		for (long index = 0; index < tablebase.positions; index++)
+		{
+			tablebase.getPosition(index, types, camps, hands, scratch);
+			assertEquals(index, tablebase.getIndex(types, camps, hands, false, scratch));
+			Tablebase.rotate(types, camps, hands);
+			assertEquals(index, tablebase.getIndex(types, camps, hands, true, scratch));
+		}
+	}
+
+	@Test public void testValuesMatchMoves() throws IOException
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		ShogiBot bot = new ShogiBot(mainHandler);
+		mainHandler.loadVariant(writeSmallVariant(), bot);
+		Tablebase tablebase = new Tablebase(mainHandler.shogiRules, mainHandler.currentState);
+		tablebase.setValues(new TablebaseGenerator(tablebase, 2).generate());
+		File tablebaseFile = File.createTempFile("smallShogi", ".tb");
+		tablebaseFile.deleteOnExit();
+		assertTrue(tablebase.save(tablebaseFile.getPath()));
+
+		// Each value follows from the values of the moves, read back from the mapped file.
+		Tablebase mapped = new Tablebase(mainHandler.shogiRules, mainHandler.currentState);
+		assertTrue(mapped.load(tablebaseFile.getPath()));
+		for (long index = 0; index < mapped.positions; index++)
+		{
+			GameState state = mapped.getGameState(index);
+			MoveList moves = new MoveList(64);
+			mainHandler.moveGenerator.generateMoves(state.position, (byte) 1, state.hands[0], moves);
+			boolean kingCapture = false;
+			boolean allWon = moves.size > 0;
+			int fastestLoss = Integer.MAX_VALUE;
+			int slowestWin = 0;
+			for (int i = 0; i < moves.size; i++)
+			{
+				GameState child = ShogiMove.applyTo(state, moves.moves[i]);
+				int value = mapped.probe(child);
+				if (child.victor == 1) kingCapture = true;
+				else if (value == Tablebase.DRAW) allWon = false;
+				else if (value % 2 == 0)
+				{
+					fastestLoss = Math.min(fastestLoss, value);
+					allWon = false;
+				}
+				else slowestWin = Math.max(slowestWin, value);
+			}
+
+			int expected = Tablebase.DRAW;
+			if (kingCapture) expected = 1;
+			else if (fastestLoss != Integer.MAX_VALUE) expected = fastestLoss + 1;
+			else if (allWon) expected = slowestWin + 1;
+			assertEquals("Position " + index, expected, mapped.getValue(index));
+		}
+
+		// From the longest win, the bot plays one ply closer to the end each move.
+		long longestWin = 0;
+		for (long index = 0; index < mapped.positions; index++)
+			if (mapped.getValue(index) % 2 == 1 && mapped.getValue(index) > mapped.getValue(longestWin))
+				longestWin = index;
+		bot.tablebasePath = tablebaseFile.getPath();
+		GameState state = mapped.getGameState(longestWin);
+		for (int ply = mapped.getValue(longestWin); ply > 1; ply--)
+		{
+			state = bot.chooseBestState(state);
+			assertEquals(ply - 1, mapped.probe(state));
+		}
+		state = bot.chooseBestState(state);
+		assertTrue(state.victor != 0);
+	}
+
+	@Test public void testTooManyMovesFails() throws IOException
+	{
+		LogicHandler mainHandler = new LogicHandler();
+		mainHandler.loadVariant(writeSmallVariant(), null);
+		Tablebase tablebase = new Tablebase(mainHandler.shogiRules, mainHandler.currentState);
+
+		// A position with more moves than can be counted gives no values.
+		TablebaseGenerator generator = new TablebaseGenerator(tablebase, 2);
+		generator.maxMoves = 2;
+		assertNull(generator.generate());
+	}
+}
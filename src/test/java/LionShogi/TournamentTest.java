@@ -0,0 +1,53 @@
+package LionShogi;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for tournaments between bots. */
+public class TournamentTest
+{
+	/**
+	* Getter for a tournament between two bots searching to the same fixed layer.
+	* @param variantPath the path of the variant file.
+	* @return the tournament.
+	 */
+	private Tournament getEqualTournament(String variantPath)
+	{
+		Tournament tournament = new Tournament(variantPath);
+		tournament.threads = 2;
+		tournament.settingsA.put("layers", "2");
+		tournament.settingsA.put("move_time", "0");
+		tournament.settingsB.putAll(tournament.settingsA);
+		return tournament;
+	}
+
+	@Test public void testElo()
+	{
+		assertEquals(0, Tournament.toElo(0.5), 1e-9);
+		assertEquals(190.85, Tournament.toElo(0.75), 0.01);
+		assertEquals(-190.85, Tournament.toElo(0.25), 0.01);
+	}
+
+	@Test public void testEqualBotsOfTwoVariants() throws InterruptedException
+	{
+		// Play both variants at once, each with its own rules.
+		Tournament lionTournament = getEqualTournament(StartShogi.LION_PATH);
+		Tournament modernTournament = getEqualTournament(StartShogi.MODERN_PATH);
+		modernTournament.maxPlies = 40;
+		Thread modernThread = new Thread(() -> modernTournament.run(4));
+		modernThread.start();
+		lionTournament.run(8);
+		modernThread.join();
+
+		// Each pair of games has the same opening with sides swapped, so equal bots draw it.
+		assertEquals(8, lionTournament.getGames());
+		assertEquals(0.5, lionTournament.getScore(), 1e-9);
+		assertEquals(0, lionTournament.getElo(), 1e-9);
+		assertEquals(4, modernTournament.getGames());
+		assertEquals(0.5, modernTournament.getScore(), 1e-9);
+		assertTrue(lionTournament.getNodesPerSecond(0) > 0);
+
+		// Bots are kept between games, at most a pair per thread.
+		assertTrue(lionTournament.idleBots.size() <= lionTournament.threads);
+	}
+}
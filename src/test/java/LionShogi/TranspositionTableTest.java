@@ -0,0 +1,97 @@
+package LionShogi;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for the transposition table shared between search threads. */
+public class TranspositionTableTest
+{
+	// Small table so that threads keep overwriting the same entries.
+	private static final int TABLE_SIZE = 16;
+	private static final int THREADS = 8;
+	private static final int OPERATIONS = 2000000;
+
+	/**
+	* Getter for the move stored with a key - all data of an entry is derived from its key.
+	* @param key the hash key.
+	* @return the move for that key.
+	 */
+	private static int moveOf(long key)
+	{
+		return (int) (key * 0x9E3779B97F4A7C15L >>> 32);
+	}
+
+	/**
+	* Getter for the score stored with a key.
+	* @param key the hash key.
+	* @return the score for that key.
+	 */
+	private static int scoreOf(long key)
+	{
+		return (short) (key >>> 40);
+	}
+
+	/**
+	* Getter for the depth stored with a key.
+	* @param key the hash key.
+	* @return the depth for that key.
+	 */
+	private static int depthOf(long key)
+	{
+		return (int) (key >>> 20) & 0x3F;
+	}
+
+	@Test public void testStoreAndProbe()
+	{
+		TranspositionTable table = new TranspositionTable(TABLE_SIZE);
+		table.store(42L, 3, TranspositionTable.BOUND_LOWER, -7, 1234);
+		long entry = table.probe(42L);
+		assertEquals(1234, TranspositionTable.getMove(entry));
+		assertEquals(-7, TranspositionTable.getScore(entry));
+		assertEquals(3, TranspositionTable.getDepth(entry));
+		assertEquals(TranspositionTable.BOUND_LOWER, TranspositionTable.getBound(entry));
+		assertEquals(0, table.probe(42L + TABLE_SIZE)); // Same index, other key.
+	}
+
+	@Test public void testConcurrentAccessNeverTorn() throws InterruptedException
+	{
+		TranspositionTable table = new TranspositionTable(TABLE_SIZE);
+		AtomicLong tornEntries = new AtomicLong();
+		AtomicLong hits = new AtomicLong();
+
+		// Each thread stores and probes random keys, checking hits against their key.
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++)
+		{
+			final long seed = t;
+			threads[t] = new Thread(() ->
+			{
+				Random keyMaker = new Random(seed);
+				for (int i = 0; i < OPERATIONS; i++)
+				{
+					long key = keyMaker.nextLong();
+					table.store(key, depthOf(key), TranspositionTable.BOUND_EXACT,
+							scoreOf(key), moveOf(key));
+
+					// Probe the key back, while other threads overwrite its entry.
+					long entry = table.probe(key);
+					if (TranspositionTable.getBound(entry) == 0) continue;
+					hits.incrementAndGet();
+					if (TranspositionTable.getMove(entry) != moveOf(key)
+							|| TranspositionTable.getScore(entry) != scoreOf(key)
+							|| TranspositionTable.getDepth(entry) != depthOf(key)
+							|| TranspositionTable.getBound(entry) != TranspositionTable.BOUND_EXACT)
+						tornEntries.incrementAndGet();
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) thread.join();
+
+		assertTrue("No entry was found", hits.get() > 0);
+		assertEquals("Torn entries", 0, tornEntries.get());
+	}
+}
@@ -0,0 +1,121 @@
+package LionShogi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests for the engine protocol. */
+public class UsiEngineTest
+{
+	@Test public void testGoDepth()
+	{
+		UsiEngine engine = new UsiEngine(StartShogi.MODERN_PATH);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		engine.output = new PrintStream(output, true);
+
+		// Play a move of the start position, then search the reply to a fixed depth.
+		GameState startState = engine.state;
+		int move = engine.bot.getAllMoves(new SearchPosition(startState,
+				engine.bot.getZobrist(startState)))[0];
+		String firstMove = ShogiMove.toCommand(startState, move);
+		assertTrue(engine.processCommand("usi"));
+		assertTrue(engine.processCommand("position startpos moves " + firstMove));
+		assertFalse(engine.state.P0Turn);
+		assertTrue(engine.processCommand("go depth 2"));
+		engine.finishSearch();
+
+		// Each layer is streamed before the move, which is one of the position's.
+		String[] lines = output.toString().split("\n");
+		assertEquals("usiok", lines[1]);
+		assertTrue(lines[2].startsWith("info depth 1 "));
+		assertTrue(lines[3].startsWith("info depth 2 "));
+		assertTrue(lines[4].startsWith("bestmove "));
+		assertTrue(engine.parseMove(engine.state, lines[4].substring(9)) != 0);
+		assertEquals(8, engine.bot.baseLayer);
+		assertFalse(engine.processCommand("quit"));
+	}
+
+	@Test public void testDropsAreGameCommands()
+	{
+		UsiEngine engine = new UsiEngine(StartShogi.LION_PATH);
+		LogicHandler mainHandler = engine.mainHandler;
+
+		// Play captures first until the side to play holds a piece.
+		GameState state = engine.state;
+		for (int ply = 0; ply < 40 && state.getHandSize(state.getTurnByte()) == 0; ply++)
+		{
+			int[] moves = engine.bot.getAllMoves(new SearchPosition(state,
+					engine.bot.getZobrist(state)));
+			int move = moves[0];
+			for (int candidate : moves)
+				if (ShogiMove.isCapture(candidate) && ShogiMove.applyTo(state, candidate).victor == 0)
+					move = candidate;
+			state = ShogiMove.applyTo(state, move);
+		}
+		assertTrue(state.getHandSize(state.getTurnByte()) > 0);
+
+		// Each drop's command plays the same drop in the game, and reads back as the drop.
+		int drops = 0;
+		for (int move : engine.bot.getAllMoves(new SearchPosition(state,
+				engine.bot.getZobrist(state))))
+		{
+			if (!ShogiMove.isDrop(move)) continue;
+			String command = ShogiMove.toCommand(state, move);
+			assertTrue(command, command.matches("c[0-9]+->[0-9]+-[0-9]+"));
+			assertEquals(move, engine.parseMove(state, command));
+			GameState gameState = mainHandler.placeCapture(command, state);
+			GameState dropState = ShogiMove.applyTo(state, move);
+			assertEquals(new SearchPosition(dropState, engine.bot.getZobrist(dropState)).hashKey,
+					new SearchPosition(gameState, engine.bot.getZobrist(gameState)).hashKey);
+			drops++;
+		}
+		assertTrue(drops > 0);
+	}
+
+	@Test public void testStopAndIllegalMove()
+	{
+		UsiEngine engine = new UsiEngine(StartShogi.LION_PATH);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		engine.output = new PrintStream(output, true);
+
+		// An illegal move leaves the position as it was.
+		GameState startState = engine.state;
+		engine.processCommand("position startpos moves 9-9,9-8");
+		assertTrue(engine.state == startState);
+
+		// Stop ends an infinite search with a move.
+		engine.processCommand("go infinite");
+		engine.processCommand("stop");
+		assertTrue(output.toString().contains("bestmove "));
+	}
+
+	@Test public void testInfiniteWaitsForStop() throws IOException, InterruptedException
+	{
+		UsiEngine engine = new UsiEngine(StartShogi.LION_PATH);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		engine.output = new PrintStream(output, true);
+		PipedOutputStream commands = new PipedOutputStream();
+		PrintStream input = new PrintStream(commands, true);
+		Scanner scanner = new Scanner(new PipedInputStream(commands));
+		Thread engineThread = new Thread(() -> engine.run(scanner));
+		engineThread.start();
+
+		// The search streams its layers, but its move waits for stop.
+		input.println("go infinite");
+		Thread.sleep(500);
+		assertTrue(output.toString().startsWith("info depth 1 score cp 0 "));
+		assertFalse(output.toString().contains("bestmove"));
+		input.println("stop");
+		input.println("quit");
+		engineThread.join(5000);
+		assertFalse(engineThread.isAlive());
+		String[] lines = output.toString().split("\n");
+		assertTrue(lines[lines.length - 1].startsWith("bestmove "));
+	}
+}